@@ -0,0 +1,57 @@
+package com.nilecramm.fomtools;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionnaire des noms d'actions partagé par toutes les parties du corps :
+ * chaque nom n'est stocké qu'une fois et reçoit un identifiant dense (0, 1, 2...)
+ * dans l'ordre où il est rencontré
+ */
+public class ActionTable {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Enregistre un nom d'action si nécessaire
+     * @return L'identifiant de l'action
+     */
+    public synchronized int intern(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * @return L'identifiant de l'action, ou -1 si aucune partie ne la contient
+     */
+    public synchronized int idOf(String name) {
+        Integer id = ids.get(name);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Nom partagé d'une action, à utiliser comme clé à la place des copies lues dans le fichier
+     */
+    public synchronized String nameOf(int id) {
+        return names.get(id);
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+
+    /**
+     * Tous les noms d'actions, dans l'ordre des identifiants
+     */
+    public synchronized List<String> names() {
+        return Collections.unmodifiableList(new ArrayList<>(names));
+    }
+}
@@ -4,7 +4,18 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class ActionWrapper {
-    public Frame[] east;
-    public Frame[] north;
-    public Frame[] south;
+    public FrameTrack east;
+    public FrameTrack north;
+    public FrameTrack south;
+
+    /**
+     * Frames d'une direction ("north", "east", "south" par défaut)
+     */
+    public FrameTrack forDirection(String direction) {
+        switch (direction) {
+            case "north": return north;
+            case "east": return east;
+            default: return south; // Default to south
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,106 @@
+package com.nilecramm.fomtools;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Différences entre deux versions de par_output.json, par (partie, action, direction).
+ *
+ * Seules les actions déjà décodées dans l'ancienne version sont comparées frame par frame :
+ * les autres n'ont jamais été affichées, et en mode paresseux elles ne sont plus lisibles
+ * une fois le fichier régénéré. Les actions ajoutées ou retirées sont toujours signalées.
+ */
+public class AnimationDiff {
+    private static final String[] DIRECTIONS = {"north", "east", "south"};
+
+    /**
+     * Une piste modifiée, ajoutée ou retirée
+     */
+    public record Change(BodyPart part, String action, String direction) { }
+
+    private final Set<Change> changes;
+    private final boolean actionListChanged;
+
+    private AnimationDiff(Set<Change> changes, boolean actionListChanged) {
+        this.changes = changes;
+        this.actionListChanged = actionListChanged;
+    }
+
+    /**
+     * Compare les données chargées aux données relues (à appeler hors du thread JavaFX)
+     * @param previous Les données actuellement affichées
+     * @param next Les données relues
+     */
+    public static AnimationDiff compute(JsonData previous, JsonData next) {
+        Set<Change> changes = new HashSet<>();
+
+        for (BodyPart part : BodyPart.all()) {
+            Set<String> oldNames = actionNames(previous, part);
+            Set<String> newNames = actionNames(next, part);
+
+            for (String name : oldNames) {
+                if (!newNames.contains(name)) {
+                    addAllDirections(changes, part, name);
+                }
+            }
+
+            for (String name : newNames) {
+                if (!oldNames.contains(name)) {
+                    addAllDirections(changes, part, name);
+                    continue;
+                }
+
+                ActionWrapper oldAction = previous.peekAction(part, name);
+                if (oldAction == null) {
+                    continue; // Jamais décodée, donc jamais affichée
+                }
+
+                ActionWrapper newAction = next.getAction(part, next.getActionTable().idOf(name));
+                for (String direction : DIRECTIONS) {
+                    FrameTrack oldTrack = oldAction.forDirection(direction);
+                    FrameTrack newTrack = newAction != null ? newAction.forDirection(direction) : null;
+                    if (!Objects.equals(oldTrack, newTrack)) {
+                        changes.add(new Change(part, name, direction));
+                    }
+                }
+            }
+        }
+
+        boolean actionListChanged = !previous.getActionTable().names().equals(next.getActionTable().names());
+        return new AnimationDiff(changes, actionListChanged);
+    }
+
+    private static Set<String> actionNames(JsonData data, BodyPart part) {
+        return new HashSet<>(data.actionNames(part));
+    }
+
+    private static void addAllDirections(Set<Change> changes, BodyPart part, String action) {
+        for (String direction : DIRECTIONS) {
+            changes.add(new Change(part, action, direction));
+        }
+    }
+
+    /**
+     * @return true si la piste d'une partie pour cette action et cette direction a changé
+     */
+    public boolean isChanged(BodyPart part, String action, String direction) {
+        return changes.contains(new Change(part, action, direction));
+    }
+
+    public Set<Change> getChanges() {
+        return Collections.unmodifiableSet(changes);
+    }
+
+    /**
+     * @return true si des actions ont été ajoutées, retirées ou réordonnées
+     */
+    public boolean isActionListChanged() {
+        return actionListChanged;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty() && !actionListChanged;
+    }
+}
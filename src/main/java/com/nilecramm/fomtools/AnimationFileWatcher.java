@@ -0,0 +1,91 @@
+package com.nilecramm.fomtools;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Surveille par_output.json pour relire la base d'animations quand le jeu la régénère.
+ * Le dossier parent est surveillé (un WatchService ne suit pas un fichier seul) et les
+ * écritures successives sont regroupées avant de prévenir.
+ */
+public class AnimationFileWatcher {
+    // Délai sans nouvelle écriture avant de considérer le fichier complet
+    private static final long QUIET_PERIOD_MS = 300;
+
+    private final Path file;
+    private final Runnable onChange;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    /**
+     * @param file Le fichier à surveiller
+     * @param onChange Appelé sur le thread du watcher quand le fichier a été réécrit
+     */
+    public AnimationFileWatcher(Path file, Runnable onChange) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.onChange = onChange;
+        this.watchService = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+        thread = new Thread(this::run, "animation-file-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Arrête la surveillance
+     */
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean touched = false;
+
+                // Regrouper les événements qui se suivent de près (fichier écrit en plusieurs fois)
+                while (key != null) {
+                    touched |= concernsFile(key);
+                    key = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS);
+                }
+
+                if (touched && Files.isRegularFile(file)) {
+                    try {
+                        onChange.run();
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Surveillance arrêtée
+        }
+    }
+
+    private boolean concernsFile(WatchKey key) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // Un débordement peut cacher une écriture du fichier
+            touched |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || file.getFileName().equals(event.context());
+        }
+        key.reset();
+        return touched;
+    }
+}
@@ -0,0 +1,237 @@
+package com.nilecramm.fomtools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index binaire compilé de par_output.json : toutes les parties, actions et directions,
+ * avec les frames stockées en tableaux de primitives. Le fichier est projeté en mémoire
+ * et les actions ne sont décodées qu'au premier accès.
+ *
+ * Format (big-endian) :
+ * en-tête    : magic, version, taille et date de modification du JSON source, taille du répertoire
+ * répertoire : pour chaque partie, son nom puis (nom d'action, position dans le corps) par action
+ * corps      : pour chaque action, les directions east/north/south : nombre de frames (-1 si absente),
+ *              puis offsetX[], offsetY[], target_frame[], depth[], broadcast_message[], duration[]
+ */
+public class AnimationIndex {
+    private static final int MAGIC = 0x464F4D49; // "FOMI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+
+    private AnimationIndex() {
+    }
+
+    /**
+     * Fichier d'index associé à un fichier JSON
+     */
+    public static File indexFileFor(File source) {
+        return new File(source.getPath() + ".idx");
+    }
+
+    /**
+     * Charge l'index s'il existe et correspond encore au fichier source
+     * @return Les données (décodées à la demande), ou null si l'index est absent, périmé ou invalide
+     */
+    public static JsonData load(File indexFile, File source) {
+        if (!indexFile.isFile() || !source.isFile()) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            // Valider l'en-tête avant de projeter : un index périmé ne doit pas rester projeté
+            // (sous Windows, il ne pourrait plus être remplacé)
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    break;
+                }
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                return null;
+            }
+            if (header.getLong() != source.length() || header.getLong() != source.lastModified()) {
+                return null; // Le JSON a changé depuis la compilation
+            }
+
+            // La projection reste valide après la fermeture du canal
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.position(HEADER_SIZE - 4);
+            int directorySize = buffer.getInt();
+            int bodyStart = HEADER_SIZE + directorySize;
+
+            JsonData jsonData = new JsonData();
+            int partCount = buffer.getInt();
+            for (int p = 0; p < partCount; p++) {
+                BodyPart part = BodyPart.fromId(readString(buffer));
+                if (part == null) {
+                    return null; // Index compilé avec une autre liste de parties
+                }
+                int actionCount = buffer.getInt();
+                if (actionCount < 0) {
+                    continue; // Partie absente du JSON
+                }
+
+                List<String> names = new ArrayList<>(actionCount);
+                long[] locations = new long[actionCount];
+                for (int a = 0; a < actionCount; a++) {
+                    names.add(readString(buffer));
+                    locations[a] = bodyStart + buffer.getInt();
+                }
+
+                jsonData.setLazyActions(part, names, locations, location -> readAction(buffer, (int) location));
+            }
+            return jsonData;
+        } catch (Exception e) {
+            System.err.println("Index d'animations illisible, le JSON sera relu : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Compile les données dans un fichier d'index, remplacé de façon atomique.
+     * Rien n'est écrit si le JSON a changé depuis qu'il a été lu : l'index ne correspondrait à aucune version.
+     * @param sourceLength Taille du JSON relevée avant sa lecture
+     * @param sourceLastModified Date du JSON relevée avant sa lecture
+     */
+    public static void compile(JsonData jsonData, File source, long sourceLength, long sourceLastModified,
+                               File indexFile) throws IOException {
+        ByteArrayOutputStream directoryBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream directory = new DataOutputStream(directoryBytes);
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+
+        BodyPart[] parts = BodyPart.all();
+        directory.writeInt(parts.length);
+        ActionTable actionTable = jsonData.getActionTable();
+        for (BodyPart part : parts) {
+            writeString(directory, part.getId());
+            if (!jsonData.hasPart(part)) {
+                directory.writeInt(-1);
+                continue;
+            }
+
+            List<String> names = jsonData.actionNames(part);
+            directory.writeInt(names.size());
+            for (String name : names) {
+                writeString(directory, name);
+                directory.writeInt(body.size());
+                writeAction(body, jsonData.readAction(part, actionTable.idOf(name)));
+            }
+        }
+        directory.flush();
+        body.flush();
+
+        // Fichier temporaire propre à cette compilation, à côté de l'index pour que le remplacement reste atomique
+        File tempFile = File.createTempFile(indexFile.getName() + ".", ".tmp", indexFile.getAbsoluteFile().getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(sourceLength);
+                out.writeLong(sourceLastModified);
+                out.writeInt(directoryBytes.size());
+                directoryBytes.writeTo(out);
+                bodyBytes.writeTo(out);
+            }
+
+            if (source.length() != sourceLength || source.lastModified() != sourceLastModified) {
+                throw new IOException(source.getName() + " a été modifié pendant la compilation, index abandonné");
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    private static void writeAction(DataOutputStream out, ActionWrapper action) throws IOException {
+        writeFrames(out, action != null ? action.east : null);
+        writeFrames(out, action != null ? action.north : null);
+        writeFrames(out, action != null ? action.south : null);
+    }
+
+    private static void writeFrames(DataOutputStream out, FrameTrack track) throws IOException {
+        if (track == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        int count = track.size();
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) out.writeInt(track.offsetX(i));
+        for (int i = 0; i < count; i++) out.writeInt(track.offsetY(i));
+        for (int i = 0; i < count; i++) out.writeInt(track.targetFrame(i));
+        for (int i = 0; i < count; i++) out.writeInt(track.depth(i));
+        for (int i = 0; i < count; i++) {
+            Integer broadcast = track.broadcastMessage(i);
+            out.writeInt(broadcast != null ? broadcast : FrameTrack.NO_BROADCAST);
+        }
+        for (int i = 0; i < count; i++) out.writeDouble(track.duration(i));
+    }
+
+    private static ActionWrapper readAction(ByteBuffer buffer, int position) {
+        // Lecture par positions absolues : le buffer partagé n'est jamais déplacé
+        int[] cursor = {position};
+        ActionWrapper action = new ActionWrapper();
+        action.east = readFrames(buffer, cursor);
+        action.north = readFrames(buffer, cursor);
+        action.south = readFrames(buffer, cursor);
+        return action;
+    }
+
+    private static FrameTrack readFrames(ByteBuffer buffer, int[] cursor) {
+        int count = buffer.getInt(cursor[0]);
+        cursor[0] += 4;
+        if (count < 0) {
+            return null;
+        }
+
+        // Les colonnes du fichier sont copiées telles quelles dans la piste
+        int[] offsetX = readInts(buffer, cursor, count);
+        int[] offsetY = readInts(buffer, cursor, count);
+        int[] targetFrame = readInts(buffer, cursor, count);
+        int[] depth = readInts(buffer, cursor, count);
+        int[] broadcastMessage = readInts(buffer, cursor, count);
+        double[] duration = new double[count];
+        buffer.slice(cursor[0], 8 * count).asDoubleBuffer().get(duration);
+        cursor[0] += 8 * count;
+
+        boolean hasBroadcast = false;
+        for (int broadcast : broadcastMessage) {
+            hasBroadcast |= broadcast != FrameTrack.NO_BROADCAST;
+        }
+        return new FrameTrack(offsetX, offsetY, targetFrame, depth, duration, hasBroadcast ? broadcastMessage : null);
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int[] cursor, int count) {
+        int[] values = new int[count];
+        buffer.slice(cursor[0], 4 * count).asIntBuffer().get(values);
+        cursor[0] += 4 * count;
+        return values;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
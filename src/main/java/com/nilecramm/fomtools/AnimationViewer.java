@@ -1,6 +1,7 @@
 package com.nilecramm.fomtools;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
@@ -24,13 +25,24 @@ import javafx.stage.Stage;
 
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class AnimationViewer extends Application {
+    private static final String JSON_PATH = "par_output.json";
 
     private ConfigManager configManager;
     private String customEditorPath = null;
@@ -40,6 +52,22 @@ public class AnimationViewer extends Application {
     private FlowPane spritePartsContainer;
     private Map<String, Integer> currentFrameMap = new ConcurrentHashMap<>();
 
+    // Un aperçu persistant par partie, mis à jour au plus une fois par pulse
+    private final Map<String, PartPreview> partPreviews = new LinkedHashMap<>();
+    private final Set<String> dirtyPreviews = new LinkedHashSet<>();
+    private boolean previewFlushScheduled = false;
+
+    /**
+     * Noeuds de l'aperçu d'une partie dans le panneau des sprites
+     */
+    private static class PartPreview {
+        private final VBox box = new VBox(5);
+        private final ImageView spriteView = new ImageView();
+        private final Label frameLabel = new Label();
+        private final Label groupLabel = new Label();
+        private String imagePath;
+    }
+
     // Base path for character sprites
     private String charactersBasePath = "";
 
@@ -48,6 +76,16 @@ public class AnimationViewer extends Application {
     private LUTGroupManager groupManager = new LUTGroupManager();
     private ComboBox<String> groupSelectionComboBox;
 
+    // Relit par_output.json quand le jeu le régénère
+    private AnimationFileWatcher animationFileWatcher;
+    // Relectures de par_output.json, une à la fois ; les demandes qui arrivent pendant l'attente sont regroupées
+    private final ExecutorService animationReloader = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "animation-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean reloadPending = new AtomicBoolean();
+
 
     @Override
     public void start(Stage primaryStage) {
@@ -62,23 +100,26 @@ public class AnimationViewer extends Application {
             // Create menu bar
             MenuBar menuBar = createMenuBar(primaryStage);
 
-            // Le reste du code reste identique...
-            ReadJson readJson = new ReadJson();
-            JsonData jsonData = null;
+            // Afficher la fenêtre tout de suite, le chargement se fait en arrière-plan
+            long startTime = System.nanoTime();
+            showLoadingWindow(primaryStage, menuBar);
 
-            try {
-                jsonData = readJson.readJson("par_output.json");
-            } catch (Exception e) {
-                showMissingFileWindow(primaryStage, menuBar);
-                return;
-            }
+            SpriteCache spriteCache = new SpriteCache(configManager.getSpriteCacheBudgetBytes());
+            StartupLoader startup = new StartupLoader(new ReadJson(configManager.getJsonLoadMode()),
+                    JSON_PATH, charactersBasePath, spriteCache);
 
-            if (jsonData == null || jsonData.base_arm_left == null) {
-                showMissingFileWindow(primaryStage, menuBar);
-                return;
-            }
+            startup.load().whenComplete((loaded, error) -> Platform.runLater(() -> {
+                if (error != null) {
+                    error.printStackTrace();
+                }
+                if (loaded == null || loaded.getInitialAction() == null) {
+                    showMissingFileWindow(primaryStage, menuBar);
+                    return;
+                }
 
-            initializeNormalView(primaryStage, menuBar, jsonData);
+                initializeNormalView(primaryStage, menuBar, loaded);
+                logFirstFrame(primaryStage.getScene(), startTime);
+            }));
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -137,6 +178,124 @@ public class AnimationViewer extends Application {
     }
 
 
+    /**
+     * Surveille par_output.json : chaque nouvelle version est relue et comparée en arrière-plan,
+     * puis l'animation en cours passe dessus sans redémarrer l'application.
+     * Un décodage qui découvre le fichier modifié (données paresseuses) déclenche aussi la relecture.
+     * @param loaded Les données actuellement affichées
+     * @param actionComboBox Liste des actions, mise à jour si des actions apparaissent ou disparaissent
+     */
+    private void watchAnimationData(JsonData loaded, ComboBox<String> actionComboBox) {
+        if (animationFileWatcher != null) {
+            animationFileWatcher.close();
+        }
+
+        ReadJson readJson = new ReadJson(configManager.getJsonLoadMode());
+        // Données de référence pour la comparaison (lues aussi par le thread du watcher)
+        AtomicReference<JsonData> current = new AtomicReference<>(loaded);
+        Runnable[] requestReload = new Runnable[1];
+
+        Runnable reload = () -> {
+            long start = System.nanoTime();
+            JsonData fresh = readJson.readJson(JSON_PATH);
+            if (fresh == null || fresh.getActionTable().size() == 0) {
+                // Fichier en cours d'écriture ou invalide : on garde les données actuelles
+                System.err.println("par_output.json illisible, rechargement ignoré");
+                return;
+            }
+            fresh.setOnStale(requestReload[0]);
+
+            AnimationDiff diff = AnimationDiff.compute(current.get(), fresh);
+            current.set(fresh);
+            System.out.println("par_output.json rechargé en " + (System.nanoTime() - start) / 1_000_000
+                    + " ms, " + diff.getChanges().size() + " pistes modifiées");
+
+            Platform.runLater(() -> {
+                animation.replaceAnimationData(fresh, diff);
+                if (diff.isActionListChanged()) {
+                    updateActionList(actionComboBox, fresh);
+                }
+            });
+        };
+        requestReload[0] = () -> {
+            if (reloadPending.compareAndSet(false, true)) {
+                animationReloader.execute(() -> {
+                    reloadPending.set(false);
+                    reload.run();
+                });
+            }
+        };
+        loaded.setOnStale(requestReload[0]);
+
+        try {
+            animationFileWatcher = new AnimationFileWatcher(Paths.get(JSON_PATH), () -> {
+                // Le fichier a changé : plus aucune action n'est lue dans les anciennes données
+                current.get().markStale();
+                requestReload[0].run();
+            });
+        } catch (IOException e) {
+            System.err.println("Impossible de surveiller " + JSON_PATH + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Remplace la liste des actions en gardant la sélection si elle existe encore
+     */
+    private void updateActionList(ComboBox<String> actionComboBox, JsonData jsonData) {
+        List<String> actions = jsonData.getActionTable().names();
+        String selected = actionComboBox.getValue();
+        actionComboBox.getItems().setAll(actions);
+
+        if (actions.contains(selected)) {
+            actionComboBox.setValue(selected);
+        } else if (!actions.isEmpty()) {
+            // L'action affichée a disparu : le changement de valeur relance l'animation
+            actionComboBox.setValue(actions.get(0));
+        }
+    }
+
+    /**
+     * Fenêtre affichée pendant le chargement de démarrage
+     */
+    private void showLoadingWindow(Stage primaryStage, MenuBar menuBar) {
+        VBox loadingContent = new VBox(20);
+        loadingContent.setAlignment(Pos.CENTER);
+        loadingContent.setPadding(new Insets(50));
+
+        Label loadingLabel = new Label("Loading animations...");
+        loadingLabel.setStyle("-fx-font-size: 18px;");
+
+        loadingContent.getChildren().addAll(new ProgressIndicator(), loadingLabel);
+
+        BorderPane root = new BorderPane();
+        root.setTop(menuBar);
+        root.setCenter(loadingContent);
+
+        Scene scene = new Scene(root);
+        primaryStage.setTitle("Animation Viewer");
+        primaryStage.setScene(scene);
+
+        // Même taille que la vue normale, pour que la fenêtre ne change pas de taille ensuite
+        Rectangle2D bounds = Screen.getPrimary().getVisualBounds();
+        primaryStage.setWidth(bounds.getWidth());
+        primaryStage.setHeight(bounds.getHeight());
+        primaryStage.centerOnScreen();
+        primaryStage.show();
+    }
+
+    /**
+     * Affiche le temps écoulé entre le lancement et la première frame affichée
+     */
+    private void logFirstFrame(Scene scene, long startTime) {
+        Runnable[] listener = new Runnable[1];
+        listener[0] = () -> {
+            // Retirer l'écouteur hors du pulse en cours
+            Platform.runLater(() -> scene.removePostLayoutPulseListener(listener[0]));
+            System.out.println("Première frame affichée en " + (System.nanoTime() - startTime) / 1_000_000 + " ms");
+        };
+        scene.addPostLayoutPulseListener(listener[0]);
+    }
+
     /**
      * Shows a window indicating that par_output.json is missing
      */
@@ -182,9 +341,11 @@ public class AnimationViewer extends Application {
     /**
      * Initializes the normal view when par_output.json is found
      */
-    private void initializeNormalView(Stage primaryStage, MenuBar menuBar, JsonData jsonData) {
-        // Get available actions and directions
-        ArrayList<String> actions = new ArrayList<>(jsonData.base_arm_left.keySet());
+    private void initializeNormalView(Stage primaryStage, MenuBar menuBar, StartupLoader startup) {
+        JsonData jsonData = startup.getJsonData();
+
+        // Get available actions (union over all parts) and directions
+        ArrayList<String> actions = new ArrayList<>(jsonData.getActionTable().names());
         ArrayList<String> directions = new ArrayList<>();
         directions.add("north");
         directions.add("south");
@@ -192,17 +353,18 @@ public class AnimationViewer extends Application {
 
         // Animation container
         Pane animationContainer = new Pane();
-        animation = new RenderAnimation(jsonData, animationContainer);
+        animation = new RenderAnimation(jsonData, animationContainer, startup.getSpriteCache());
+        animation.getCompositeCache().setBudgetBytes(configManager.getCompositeCacheBudgetBytes());
 
         // Set a frame tracker on the animation
         animation.setFrameUpdateListener((partName, frameIndex) -> {
             currentFrameMap.put(partName, frameIndex);
-            updatePartsPreviews();
+            schedulePreviewUpdate(partName);
         });
 
         // Set initial animation
-        String initialAction = actions.get(0);
-        String initialDirection = "south";
+        String initialAction = startup.getInitialAction();
+        String initialDirection = StartupLoader.INITIAL_DIRECTION;
         animation.setScale(scale);
         animation.setSpeed(speed);
 
@@ -212,6 +374,14 @@ public class AnimationViewer extends Application {
         animationView.setPrefSize(300, 300);
         animationView.setMinSize(300, 300);
 
+        // Avancement de la préparation des frames, visible seulement pendant qu'elle tourne
+        ProgressBar warmupBar = new ProgressBar();
+        warmupBar.progressProperty().bind(animation.warmupProgressProperty());
+        warmupBar.visibleProperty().bind(animation.warmupProgressProperty().lessThan(1.0));
+        warmupBar.setMaxWidth(Double.MAX_VALUE);
+        StackPane.setAlignment(warmupBar, Pos.BOTTOM_CENTER);
+        animationView.getChildren().add(warmupBar);
+
         // Sprite parts preview container
         spritePartsContainer = new FlowPane();
         spritePartsContainer.setPadding(new Insets(10));
@@ -224,8 +394,8 @@ public class AnimationViewer extends Application {
         spritePartsScroll.setFitToWidth(true);
         spritePartsScroll.setPrefHeight(200);
 
-        // Get the list of available characters
-        List<String> characters = SpriteLoader.listCharacterFolders(charactersBasePath);
+        // Get the list of available characters (listed during startup)
+        List<String> characters = startup.getCharacters();
         ComboBox<String> characterComboBox = new ComboBox<>(FXCollections.observableArrayList(characters));
         characterComboBox.setMaxWidth(Double.MAX_VALUE);
 
@@ -235,7 +405,10 @@ public class AnimationViewer extends Application {
         if (!characters.isEmpty()) {
             characterComboBox.setValue(characters.get(0));
             String characterPath = charactersBasePath + characterComboBox.getValue();
-            boolean loaded = animation.loadCharacter(characterPath);
+            // Les sprites du premier personnage ont déjà été parcourus en arrière-plan
+            boolean loaded = startup.getSpriteLoader() != null
+                    ? animation.loadCharacter(startup.getCharacterPath(), startup.getSpriteLoader())
+                    : animation.loadCharacter(characterPath);
             if (loaded) {
                 animation.setAnimation(initialAction, initialDirection);
                 updateDetectedPartsLabel(detectedPartsLabel);
@@ -267,6 +440,7 @@ public class AnimationViewer extends Application {
 
         actionComboBox.setOnAction(e ->
                 animation.setAnimation(actionComboBox.getValue(), directionComboBox.getValue()));
+        watchAnimationData(jsonData, actionComboBox);
 
         directionComboBox.setOnAction(e ->
                 animation.setAnimation(actionComboBox.getValue(), directionComboBox.getValue()));
@@ -921,69 +1095,138 @@ public class AnimationViewer extends Application {
         }
     }
 
+    /**
+     * Marque l'aperçu d'une partie comme à mettre à jour, les changements d'un même pulse sont regroupés
+     */
+    private void schedulePreviewUpdate(String partName) {
+        dirtyPreviews.add(partName);
+        if (!previewFlushScheduled) {
+            previewFlushScheduled = true;
+            Platform.runLater(this::flushPreviewUpdates);
+        }
+    }
+
+    private void flushPreviewUpdates() {
+        previewFlushScheduled = false;
+        for (String partName : dirtyPreviews) {
+            updatePartPreview(partName);
+        }
+        dirtyPreviews.clear();
+    }
+
+    /**
+     * Met à jour tous les aperçus (après un rechargement ou un changement de LUT)
+     */
     private void updatePartsPreviews() {
-        spritePartsContainer.getChildren().clear();
+        // Retirer les aperçus des parties qui ne sont plus suivies
+        Iterator<Map.Entry<String, PartPreview>> it = partPreviews.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, PartPreview> entry = it.next();
+            if (!currentFrameMap.containsKey(entry.getKey())) {
+                spritePartsContainer.getChildren().remove(entry.getValue().box);
+                it.remove();
+            }
+        }
 
         for (String partName : currentFrameMap.keySet()) {
-            int frameIndex = currentFrameMap.get(partName);
-            String imagePath = animation.getSpriteLoader().getSpritePath(partName, frameIndex);
-
-            if (imagePath != null) {
-                VBox partBox = new VBox(5);
-                partBox.setAlignment(Pos.CENTER);
-                partBox.setStyle("-fx-border-color: lightgray; -fx-border-width: 1px; -fx-padding: 5px;");
-                partBox.setPrefWidth(120);
-                partBox.setPrefHeight(180); // Réduire la hauteur car moins de contrôles
-
-                // Charger et appliquer la LUT
-                Image originalImage = new Image(imagePath, 80, 80, false, false);
-                Image finalImage = animation.getLUTManager().applyLUT(partName, originalImage);
-
-                ImageView spriteView = new ImageView(finalImage);
-                spriteView.setFitWidth(Region.USE_COMPUTED_SIZE);
-                spriteView.setFitHeight(Region.USE_COMPUTED_SIZE);
-                spriteView.setPreserveRatio(false);
-                spriteView.setSmooth(false);
-
-                // Labels
-                Label nameLabel = new Label(partName);
-                nameLabel.setWrapText(true);
-                nameLabel.setMaxWidth(110);
-                nameLabel.setAlignment(Pos.CENTER);
-
-                Label frameLabel = new Label("Frame: " + frameIndex);
-                frameLabel.setStyle("-fx-font-weight: bold;");
-                frameLabel.setAlignment(Pos.CENTER);
-
-                // Afficher le groupe si la partie en fait partie
-                String partGroup = groupManager.getPartGroup(partName);
-                if (partGroup != null) {
-                    Label groupLabel = new Label("Group: " + partGroup);
-                    groupLabel.setStyle("-fx-font-size: 10px; -fx-text-fill: blue;");
-                    groupLabel.setAlignment(Pos.CENTER);
-                    partBox.getChildren().add(groupLabel);
-                }
-
-                // Bouton d'édition
-                Button editButton = new Button(customEditorPath != null ? "Edit" : "Edit");
-                editButton.setOnAction(e -> openSpriteInExternalEditor(imagePath));
+            updatePartPreview(partName);
+        }
+    }
 
-                partBox.getChildren().addAll(spriteView, nameLabel, frameLabel, editButton);
-                spritePartsContainer.getChildren().add(partBox);
+    /**
+     * Met à jour l'aperçu d'une partie, en créant ses noeuds la première fois
+     */
+    private void updatePartPreview(String partName) {
+        Integer frameIndex = currentFrameMap.get(partName);
+        String imagePath = frameIndex != null ? animation.getSpriteLoader().getSpritePath(partName, frameIndex) : null;
+
+        if (imagePath == null) {
+            PartPreview removed = partPreviews.remove(partName);
+            if (removed != null) {
+                spritePartsContainer.getChildren().remove(removed.box);
             }
+            return;
+        }
+
+        PartPreview preview = partPreviews.get(partName);
+        if (preview == null) {
+            preview = createPartPreview(partName);
+            partPreviews.put(partName, preview);
+            spritePartsContainer.getChildren().add(preview.box);
         }
+
+        preview.imagePath = imagePath;
+        preview.frameLabel.setText("Frame: " + frameIndex);
+
+        // Afficher le groupe si la partie en fait partie
+        String partGroup = groupManager.getPartGroup(partName);
+        preview.groupLabel.setText(partGroup != null ? "Group: " + partGroup : "");
+        preview.groupLabel.setVisible(partGroup != null);
+        preview.groupLabel.setManaged(partGroup != null);
+
+        // Seule l'image change d'une frame à l'autre
+        updateSinglePartPreview(partName, preview);
+    }
+
+    private PartPreview createPartPreview(String partName) {
+        PartPreview preview = new PartPreview();
+
+        VBox partBox = preview.box;
+        partBox.setAlignment(Pos.CENTER);
+        partBox.setStyle("-fx-border-color: lightgray; -fx-border-width: 1px; -fx-padding: 5px;");
+        partBox.setPrefWidth(120);
+        partBox.setPrefHeight(180); // Réduire la hauteur car moins de contrôles
+
+        ImageView spriteView = preview.spriteView;
+        spriteView.setFitWidth(Region.USE_COMPUTED_SIZE);
+        spriteView.setFitHeight(Region.USE_COMPUTED_SIZE);
+        spriteView.setPreserveRatio(false);
+        spriteView.setSmooth(false);
+
+        // Labels
+        Label nameLabel = new Label(partName);
+        nameLabel.setWrapText(true);
+        nameLabel.setMaxWidth(110);
+        nameLabel.setAlignment(Pos.CENTER);
+
+        preview.frameLabel.setStyle("-fx-font-weight: bold;");
+        preview.frameLabel.setAlignment(Pos.CENTER);
+
+        preview.groupLabel.setStyle("-fx-font-size: 10px; -fx-text-fill: blue;");
+        preview.groupLabel.setAlignment(Pos.CENTER);
+
+        // Bouton d'édition, ouvre le sprite actuellement affiché
+        Button editButton = new Button("Edit");
+        editButton.setOnAction(e -> openSpriteInExternalEditor(preview.imagePath));
+
+        partBox.getChildren().addAll(preview.groupLabel, spriteView, nameLabel, preview.frameLabel, editButton);
+        return preview;
     }
 
     /**
      * Met à jour l'image d'un seul sprite dans le preview sans recréer tout
      */
-    private void updateSinglePartPreview(String partName, int frameIndex, ImageView spriteView) {
-        String imagePath = animation.getSpriteLoader().getSpritePath(partName, frameIndex);
-        if (imagePath != null) {
-            Image originalImage = new Image(imagePath, 80, 80, false, false);
-            Image finalImage = animation.getLUTManager().applyLUT(partName, originalImage);
-            spriteView.setImage(finalImage);
+    private void updateSinglePartPreview(String partName, PartPreview preview) {
+        BodyPart part = BodyPart.fromId(partName);
+        String imagePath = preview.imagePath;
+        if (part == null || imagePath == null) {
+            return;
+        }
+
+        // Décodé en arrière-plan si besoin, l'aperçu garde l'image précédente en attendant
+        DecodeScheduler scheduler = animation.getDecodeScheduler();
+        Image ready = scheduler.getIfReady(part, imagePath, 80, 80);
+        if (ready != null) {
+            preview.spriteView.setImage(ready);
+            return;
         }
+        scheduler.decode(part, imagePath, 80, 80, DecodeScheduler.Priority.VISIBLE_NOW)
+                .thenAccept(image -> Platform.runLater(() -> {
+                    // L'aperçu a pu passer à une autre frame entre-temps
+                    if (imagePath.equals(preview.imagePath)) {
+                        preview.spriteView.setImage(image);
+                    }
+                }));
     }
 
     /**
@@ -0,0 +1,120 @@
+package com.nilecramm.fomtools;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registre des parties du corps : identifiant dans par_output.json et dans les noms de sprites,
+ * taille d'origine des sprites et ordre de rendu par direction.
+ * L'ordre de déclaration est celui des champs de {@link JsonData}.
+ */
+public enum BodyPart {
+    BASE_ARM_LEFT("base_arm_left", 32),
+    BASE_ARM_RIGHT("base_arm_right", 32),
+    BASE_CHEST("base_chest", 32),
+    BASE_HEAD("base_head", 16),
+    BASE_LEGS("base_legs", 32),
+    SLEEVE_LEFT("sleeve_left", 32),
+    TOOL("tool", 32),
+    TOOL_EFFECT("tool_effect", 32),
+    SLEEVE_RIGHT("sleeve_right", 32),
+    HEAD_GEAR("head_gear", 32),
+    FACE_GEAR("face_gear", 32),
+    HAIR_FRONT("hair_front", 32),
+    EYES("eyes", 16),
+    HAIR_MID("hair_mid", 40),
+    FACE("face", 16),
+    FACIAL_HAIR("facial_hair", 16),
+    WAIST("waist", 32),
+    FEET("feet", 32),
+    LEGS("legs", 32),
+    TORSO("torso", 32),
+    BACK_GEAR("back_gear", 32),
+    HAIR_BACK("hair_back", 40),
+    HEAD_GEAR_BACK("head_gear_back", 32),
+    BASE_EFFECT("base_effect", 32);
+
+    private static final BodyPart[] ALL = values();
+    private static final Map<String, BodyPart> BY_ID = new HashMap<>();
+
+    // Ordre de rendu par direction, du premier plan vers l'arrière-plan
+    // ("held_item" n'a pas de partie associée et n'apparaît donc pas ici)
+    private static final BodyPart[] SOUTH_ORDER = {
+            SLEEVE_LEFT, BASE_ARM_LEFT, TOOL, TOOL_EFFECT, SLEEVE_RIGHT, BASE_ARM_RIGHT,
+            HEAD_GEAR, FACE_GEAR, HAIR_FRONT, EYES, HAIR_MID, FACE, FACIAL_HAIR, BASE_HEAD,
+            WAIST, FEET, LEGS, BASE_LEGS, TORSO, BASE_CHEST, BACK_GEAR, HAIR_BACK,
+            HEAD_GEAR_BACK, BASE_EFFECT
+    };
+    private static final BodyPart[] EAST_ORDER = {
+            SLEEVE_LEFT, BASE_ARM_LEFT, TOOL, TOOL_EFFECT, HEAD_GEAR, FACE_GEAR,
+            HAIR_FRONT, EYES, HAIR_MID, FACE, FACIAL_HAIR, BASE_HEAD, WAIST, FEET, LEGS,
+            BASE_LEGS, TORSO, BASE_CHEST, SLEEVE_RIGHT, BASE_ARM_RIGHT, HAIR_BACK, BACK_GEAR,
+            HEAD_GEAR_BACK, BASE_EFFECT
+    };
+    private static final BodyPart[] NORTH_ORDER = {
+            HEAD_GEAR, HAIR_BACK, BACK_GEAR, SLEEVE_LEFT, BASE_ARM_LEFT, SLEEVE_RIGHT, BASE_ARM_RIGHT,
+            HAIR_FRONT, HAIR_MID, FACE_GEAR, EYES, FACE, FACIAL_HAIR, BASE_HEAD, HEAD_GEAR_BACK,
+            WAIST, FEET, LEGS, BASE_LEGS, TORSO, BASE_CHEST, TOOL, TOOL_EFFECT,
+            BASE_EFFECT
+    };
+
+    static {
+        for (BodyPart part : ALL) {
+            BY_ID.put(part.id, part);
+        }
+    }
+
+    private final String id;
+    private final int nativeSize;
+
+    BodyPart(String id, int nativeSize) {
+        this.id = id;
+        this.nativeSize = nativeSize;
+    }
+
+    /**
+     * Nom de la partie dans le JSON et dans les noms de fichiers (ex: "base_arm_left")
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Taille d'origine (carrée) des sprites de la partie
+     */
+    public int getNativeSize() {
+        return nativeSize;
+    }
+
+    /**
+     * Retrouve une partie à partir de son nom
+     * @return La partie, ou null si le nom n'en désigne aucune
+     */
+    public static BodyPart fromId(String id) {
+        return BY_ID.get(id);
+    }
+
+    /**
+     * Toutes les parties, dans l'ordre de déclaration (ne pas modifier le tableau)
+     */
+    static BodyPart[] all() {
+        return ALL;
+    }
+
+    /**
+     * Ordre de rendu pour une direction (south par défaut), du premier plan vers l'arrière-plan
+     * (ne pas modifier le tableau)
+     */
+    static BodyPart[] renderOrder(String direction) {
+        switch (direction) {
+            case "east": return EAST_ORDER;
+            case "north": return NORTH_ORDER;
+            default: return SOUTH_ORDER;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
@@ -0,0 +1,106 @@
+package com.nilecramm.fomtools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Automate d'Aho-Corasick sur les noms des parties du corps : un seul passage sur un nom
+ * de fichier trouve toutes les parties qu'il contient et garde la plus longue
+ * (ex: "head_gear_back" plutôt que "head_gear", "tool_effect" plutôt que "tool").
+ */
+public class BodyPartMatcher {
+    // Les noms de parties sont en ASCII, tout autre caractère ramène à la racine
+    private static final int ALPHABET = 128;
+
+    private static final BodyPartMatcher INSTANCE = new BodyPartMatcher(BodyPart.all());
+
+    // Transitions complètes (échecs déjà résolus) et plus longue partie qui se termine dans chaque état
+    private final int[][] transitions;
+    private final BodyPart[] longestMatch;
+
+    private BodyPartMatcher(BodyPart[] parts) {
+        List<int[]> next = new ArrayList<>();
+        List<BodyPart> terminal = new ArrayList<>();
+        next.add(newState());
+        terminal.add(null);
+
+        // Trie des noms de parties
+        for (BodyPart part : parts) {
+            int state = 0;
+            for (char c : part.getId().toCharArray()) {
+                if (next.get(state)[c] < 0) {
+                    next.get(state)[c] = next.size();
+                    next.add(newState());
+                    terminal.add(null);
+                }
+                state = next.get(state)[c];
+            }
+            terminal.set(state, part);
+        }
+
+        int stateCount = next.size();
+        transitions = next.toArray(new int[0][]);
+        longestMatch = new BodyPart[stateCount];
+        int[] fail = new int[stateCount];
+
+        // Parcours en largeur : les liens d'échec pointent vers des états moins profonds, déjà traités
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ALPHABET; c++) {
+            int child = transitions[0][c];
+            if (child < 0) {
+                transitions[0][c] = 0;
+            } else {
+                fail[child] = 0;
+                queue.add(child);
+            }
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            // Le nom complet de l'état est plus long que tout suffixe atteint par les échecs
+            longestMatch[state] = terminal.get(state) != null ? terminal.get(state) : longestMatch[fail[state]];
+
+            for (int c = 0; c < ALPHABET; c++) {
+                int child = transitions[state][c];
+                if (child < 0) {
+                    transitions[state][c] = transitions[fail[state]][c];
+                } else {
+                    fail[child] = transitions[fail[state]][c];
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    private static int[] newState() {
+        int[] state = new int[ALPHABET];
+        Arrays.fill(state, -1);
+        return state;
+    }
+
+    /**
+     * Trouve la partie du corps d'un nom de fichier
+     * @param fileName Nom du fichier
+     * @return La plus longue partie contenue dans le nom (la première rencontrée à longueur égale), ou null
+     */
+    public static BodyPart match(String fileName) {
+        return INSTANCE.find(fileName);
+    }
+
+    private BodyPart find(String text) {
+        BodyPart best = null;
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            state = c < ALPHABET ? transitions[state][c] : 0;
+
+            BodyPart candidate = longestMatch[state];
+            if (candidate != null && (best == null || candidate.getId().length() > best.getId().length())) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,179 @@
+package com.nilecramm.fomtools;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Aplatit toutes les parties visibles d'un personnage en une image par intervalle de temps,
+ * en respectant l'ordre de rendu et les offsets des frames. Prévu pour tourner hors du thread FX.
+ */
+public class CharacterCompositor {
+
+    /**
+     * Donne l'image finale (LUT appliquée) d'un sprite de partie
+     */
+    public interface SpriteResolver {
+        Image resolve(BodyPart part, String imagePath);
+    }
+
+    /**
+     * Une partie à aplatir : son planning et le sprite de chacune de ses frames
+     */
+    public static class PartTrack {
+        private final BodyPart part;
+        private final FrameSchedule schedule;
+        private final String[] imagePaths;
+
+        /**
+         * @param part La partie
+         * @param schedule Planning de la partie
+         * @param imagePaths Chemin du sprite de chaque frame du planning (null si absent)
+         */
+        public PartTrack(BodyPart part, FrameSchedule schedule, String[] imagePaths) {
+            this.part = part;
+            this.schedule = schedule;
+            this.imagePaths = imagePaths;
+        }
+
+        BodyPart getPart() {
+            return part;
+        }
+
+        String[] getImagePaths() {
+            return imagePaths;
+        }
+    }
+
+    private CharacterCompositor() {
+    }
+
+    /**
+     * Construit l'animation aplatie
+     * @param tracks Les parties, de l'arrière-plan vers le premier plan
+     * @param resolver Chargement des sprites
+     * @return L'animation aplatie, ou null si les parties n'ont pas toutes la même durée de boucle
+     */
+    public static CompositeAnimation compose(List<PartTrack> tracks, SpriteResolver resolver) {
+        if (tracks.isEmpty()) {
+            return null;
+        }
+
+        // Toutes les parties doivent boucler ensemble pour qu'une seule boucle d'images suffise
+        double totalDuration = tracks.get(0).schedule.getTotalDuration();
+        if (totalDuration <= 0) {
+            return null;
+        }
+        for (PartTrack track : tracks) {
+            if (Math.abs(track.schedule.getTotalDuration() - totalDuration) > 1e-9) {
+                return null;
+            }
+        }
+
+        // Intervalles : réunion des débuts de frames de toutes les parties
+        TreeSet<Double> startSet = new TreeSet<>();
+        for (PartTrack track : tracks) {
+            for (int i = 0; i < track.schedule.getFrameCount(); i++) {
+                double start = track.schedule.getStart(i);
+                if (start < totalDuration) {
+                    startSet.add(start);
+                }
+            }
+        }
+        double[] starts = startSet.stream().mapToDouble(Double::doubleValue).toArray();
+
+        // Charger chaque sprite distinct une seule fois (une piste par partie)
+        List<Image[]> trackImages = new ArrayList<>();
+        for (PartTrack track : tracks) {
+            Map<String, Image> resolved = new HashMap<>();
+            Image[] images = new Image[track.imagePaths.length];
+            for (int i = 0; i < images.length; i++) {
+                String path = track.imagePaths[i];
+                if (path != null) {
+                    images[i] = resolved.computeIfAbsent(path, k -> resolver.resolve(track.part, path));
+                }
+            }
+            trackImages.add(images);
+        }
+
+        // Boîte englobante de toutes les frames de toutes les parties
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for (int t = 0; t < tracks.size(); t++) {
+            FrameTrack track = tracks.get(t).schedule.getTrack();
+            Image[] images = trackImages.get(t);
+            for (int i = 0; i < images.length; i++) {
+                if (images[i] == null) continue;
+                minX = Math.min(minX, track.offsetX(i));
+                minY = Math.min(minY, track.offsetY(i));
+                maxX = Math.max(maxX, track.offsetX(i) + (int) images[i].getWidth());
+                maxY = Math.max(maxY, track.offsetY(i) + (int) images[i].getHeight());
+            }
+        }
+        if (minX >= maxX || minY >= maxY) {
+            return null;
+        }
+
+        int width = maxX - minX;
+        int height = maxY - minY;
+        Map<Image, int[]> pixelCache = new IdentityHashMap<>();
+        Image[] segments = new Image[starts.length];
+
+        for (int s = 0; s < starts.length; s++) {
+            int[] canvas = new int[width * height];
+
+            for (int t = 0; t < tracks.size(); t++) {
+                FrameSchedule schedule = tracks.get(t).schedule;
+                int index = schedule.indexAt(starts[s]);
+                Image image = trackImages.get(t)[index];
+                if (image == null || image.getPixelReader() == null) continue;
+
+                int[] pixels = pixelCache.computeIfAbsent(image, LUTRecolorEngine::readPixels);
+                FrameTrack track = schedule.getTrack();
+                blend(canvas, width, pixels, (int) image.getWidth(), (int) image.getHeight(),
+                        track.offsetX(index) - minX, track.offsetY(index) - minY);
+            }
+
+            WritableImage segment = new WritableImage(width, height);
+            segment.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), canvas, 0, width);
+            segments[s] = segment;
+        }
+
+        return new CompositeAnimation(starts, totalDuration, segments, minX, minY);
+    }
+
+    /**
+     * Dessine un sprite par-dessus le canevas (mélange "source over", ARGB non prémultiplié)
+     */
+    private static void blend(int[] canvas, int canvasWidth, int[] sprite, int spriteWidth, int spriteHeight, int x0, int y0) {
+        for (int y = 0; y < spriteHeight; y++) {
+            int row = (y0 + y) * canvasWidth + x0;
+            for (int x = 0; x < spriteWidth; x++) {
+                int src = sprite[y * spriteWidth + x];
+                int sa = src >>> 24;
+                if (sa == 0) continue;
+
+                int i = row + x;
+                if (sa == 255) {
+                    canvas[i] = src;
+                    continue;
+                }
+
+                int dst = canvas[i];
+                int da = (dst >>> 24) * (255 - sa) / 255;
+                int outA = sa + da;
+                int r = (((src >> 16) & 0xFF) * sa + ((dst >> 16) & 0xFF) * da) / outA;
+                int g = (((src >> 8) & 0xFF) * sa + ((dst >> 8) & 0xFF) * da) / outA;
+                int b = ((src & 0xFF) * sa + (dst & 0xFF) * da) / outA;
+                canvas[i] = (outA << 24) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+}
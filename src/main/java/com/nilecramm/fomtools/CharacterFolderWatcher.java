@@ -0,0 +1,172 @@
+package com.nilecramm.fomtools;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Surveille le dossier du personnage actif (et ses sous-dossiers) pour suivre les sprites
+ * modifiés dans un éditeur externe, sans reparcourir tout le dossier.
+ * Les événements proches sont regroupés (un éditeur écrit souvent un fichier en plusieurs fois).
+ */
+public class CharacterFolderWatcher {
+    // Délai sans nouvel événement avant de transmettre un lot de changements
+    private static final long QUIET_PERIOD_MS = 150;
+
+    /**
+     * Reçoit les changements, sur le thread du watcher
+     */
+    public interface Listener {
+        /**
+         * @param updated Fichiers créés ou modifiés (y compris ceux d'un dossier apparu)
+         * @param removed Fichiers ou dossiers supprimés ou renommés
+         */
+        void onSpritesChanged(Set<Path> updated, Set<Path> removed);
+
+        /**
+         * Trop d'événements ont été perdus : il faut reparcourir tout le dossier
+         */
+        void onOverflow();
+    }
+
+    private final Path root;
+    private final Listener listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Thread thread;
+
+    /**
+     * Commence à surveiller un dossier de personnage
+     * @param root Dossier du personnage
+     * @param listener Destinataire des changements
+     */
+    public CharacterFolderWatcher(Path root, Listener listener) throws IOException {
+        this.root = root;
+        this.listener = listener;
+        this.watchService = root.getFileSystem().newWatchService();
+        registerTree(root);
+
+        thread = new Thread(this::run, "character-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Arrête la surveillance
+     */
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        thread.interrupt();
+    }
+
+    public Path getRoot() {
+        return root;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                // Attendre un premier événement, puis regrouper ceux qui suivent de près
+                WatchKey key = watchService.take();
+                Set<Path> touched = new LinkedHashSet<>();
+                boolean overflow = false;
+
+                while (key != null) {
+                    overflow |= collect(key, touched);
+                    key = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS);
+                }
+
+                if (overflow) {
+                    listener.onOverflow();
+                } else if (!touched.isEmpty()) {
+                    dispatch(touched);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Surveillance arrêtée
+        }
+    }
+
+    /**
+     * Relève les chemins touchés par les événements d'une clé
+     * @return true si des événements ont été perdus
+     */
+    private boolean collect(WatchKey key, Set<Path> touched) {
+        Path directory = directories.get(key);
+        boolean overflow = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (directory != null) {
+                touched.add(directory.resolve((Path) event.context()));
+            }
+        }
+
+        if (!key.reset()) {
+            // Dossier supprimé : ses fichiers seront retirés via l'événement du dossier parent
+            directories.remove(key);
+        }
+        return overflow;
+    }
+
+    /**
+     * L'état actuel du disque décide du type de changement, quel que soit l'ordre des événements
+     */
+    private void dispatch(Set<Path> touched) {
+        Set<Path> updated = new LinkedHashSet<>();
+        Set<Path> removed = new LinkedHashSet<>();
+
+        for (Path path : touched) {
+            if (Files.isDirectory(path)) {
+                // Nouveau dossier (ou renommé) : le surveiller et prendre tous ses fichiers
+                try {
+                    registerTree(path);
+                    try (Stream<Path> files = Files.walk(path)) {
+                        files.filter(Files::isRegularFile).forEach(updated::add);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Impossible de surveiller " + path + ": " + e.getMessage());
+                }
+            } else if (Files.exists(path)) {
+                updated.add(path);
+            } else {
+                removed.add(path);
+            }
+        }
+
+        listener.onSpritesChanged(updated, removed);
+    }
+
+    private void registerTree(Path start) throws IOException {
+        List<Path> subdirectories = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(start)) {
+            paths.filter(Files::isDirectory).forEach(subdirectories::add);
+        }
+
+        for (Path directory : subdirectories) {
+            WatchKey key = directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            directories.put(key, directory);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.nilecramm.fomtools;
+
+import javafx.scene.image.Image;
+
+import java.util.Arrays;
+
+/**
+ * Animation d'un personnage aplatie : une image par intervalle de temps pendant
+ * lequel aucune partie ne change de frame
+ */
+public class CompositeAnimation {
+    private final double[] starts;
+    private final double totalDuration;
+    private final Image[] images;
+
+    // Position du coin haut-gauche des images dans le repère des parties
+    private final int originX;
+    private final int originY;
+
+    public CompositeAnimation(double[] starts, double totalDuration, Image[] images, int originX, int originY) {
+        this.starts = starts;
+        this.totalDuration = totalDuration;
+        this.images = images;
+        this.originX = originX;
+        this.originY = originY;
+    }
+
+    /**
+     * Indice de l'image à afficher à un instant donné de la boucle
+     */
+    public int indexAt(double elapsed) {
+        double t = elapsed % totalDuration;
+        int index = Arrays.binarySearch(starts, t);
+        return index < 0 ? -index - 2 : index;
+    }
+
+    public Image getImage(int index) {
+        return images[index];
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * Mémoire occupée par les images (4 octets par pixel)
+     */
+    public long getByteSize() {
+        long size = 0;
+        for (Image image : images) {
+            size += (long) image.getWidth() * (long) image.getHeight() * 4L;
+        }
+        return size;
+    }
+}
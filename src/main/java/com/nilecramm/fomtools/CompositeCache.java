@@ -0,0 +1,100 @@
+package com.nilecramm.fomtools;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Cache LRU des animations aplaties, borné par un budget en octets
+ */
+public class CompositeCache {
+    public static final long DEFAULT_BUDGET_BYTES = 48L * 1024 * 1024;
+
+    /**
+     * Tout ce qui détermine une animation aplatie (l'échelle est une transformation, elle n'en fait pas partie)
+     */
+    public record Key(String characterPath, String action, String direction, long lutVersion) { }
+
+    private final LinkedHashMap<Key, CompositeAnimation> composites = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, Long> sizes = new LinkedHashMap<>();
+    private long budgetBytes;
+    private long usedBytes = 0;
+
+    public CompositeCache() {
+        this(DEFAULT_BUDGET_BYTES);
+    }
+
+    public CompositeCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public synchronized CompositeAnimation get(Key key) {
+        return composites.get(key);
+    }
+
+    public synchronized void put(Key key, CompositeAnimation composite) {
+        remove(key);
+        long size = composite.getByteSize();
+        if (size > budgetBytes) {
+            return; // Trop gros pour le budget, la lecture garde les parties séparées
+        }
+        composites.put(key, composite);
+        sizes.put(key, size);
+        usedBytes += size;
+        evict();
+    }
+
+    /**
+     * Oublie toutes les animations aplaties d'un personnage (sprites rechargés)
+     */
+    public synchronized void invalidateCharacter(String characterPath) {
+        Iterator<Key> it = composites.keySet().iterator();
+        while (it.hasNext()) {
+            Key key = it.next();
+            if (Objects.equals(key.characterPath(), characterPath)) {
+                usedBytes -= sizes.remove(key);
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Oublie une animation pour tous les personnages (données d'animation rechargées)
+     */
+    public synchronized void invalidateAnimation(String action, String direction) {
+        Iterator<Key> it = composites.keySet().iterator();
+        while (it.hasNext()) {
+            Key key = it.next();
+            if (Objects.equals(key.action(), action) && Objects.equals(key.direction(), direction)) {
+                usedBytes -= sizes.remove(key);
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        composites.clear();
+        sizes.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evict();
+    }
+
+    private void remove(Key key) {
+        if (composites.remove(key) != null) {
+            usedBytes -= sizes.remove(key);
+        }
+    }
+
+    private void evict() {
+        Iterator<Key> it = composites.keySet().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            usedBytes -= sizes.remove(it.next());
+            it.remove();
+        }
+    }
+}
@@ -66,4 +66,51 @@ public class ConfigManager {
         properties.setProperty("editor.path", path);
         saveConfig();
     }
+
+    /**
+     * Gets the decoded sprite cache budget in bytes
+     */
+    public long getSpriteCacheBudgetBytes() {
+        return getBudgetBytes("sprite.cache.mb", SpriteCache.DEFAULT_BUDGET_BYTES);
+    }
+
+    /**
+     * Sets the decoded sprite cache budget in megabytes
+     */
+    public void setSpriteCacheBudgetMB(long megabytes) {
+        properties.setProperty("sprite.cache.mb", String.valueOf(megabytes));
+        saveConfig();
+    }
+
+    /**
+     * Gets the flattened character animation cache budget in bytes
+     */
+    public long getCompositeCacheBudgetBytes() {
+        return getBudgetBytes("composite.cache.mb", CompositeCache.DEFAULT_BUDGET_BYTES);
+    }
+
+    /**
+     * Reads a budget stored in megabytes, falling back to the default when it is missing,
+     * unreadable or not positive (a zero budget would evict every entry as soon as it is added)
+     */
+    private long getBudgetBytes(String key, long defaultBytes) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultBytes;
+        }
+        try {
+            long megabytes = Long.parseLong(value.trim());
+            return megabytes > 0 ? megabytes * 1024 * 1024 : defaultBytes;
+        } catch (NumberFormatException e) {
+            return defaultBytes;
+        }
+    }
+
+    /**
+     * Gets how par_output.json is parsed when its binary index is missing or stale
+     */
+    public ReadJson.LoadMode getJsonLoadMode() {
+        String mode = properties.getProperty("json.load.mode", "lazy").trim();
+        return mode.equalsIgnoreCase("parallel") ? ReadJson.LoadMode.PARALLEL : ReadJson.LoadMode.LAZY;
+    }
 }
\ No newline at end of file
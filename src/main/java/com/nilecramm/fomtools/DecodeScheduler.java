@@ -0,0 +1,274 @@
+package com.nilecramm.fomtools;
+
+import javafx.scene.image.Image;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Décodage et recoloration des sprites sur un pool borné au nombre de cœurs, par ordre de priorité.
+ * Une même demande en cours n'est calculée qu'une fois, quel que soit le nombre de demandeurs,
+ * et une demande abandonnée par tous ses demandeurs avant d'avoir commencé n'est pas calculée.
+ * Le thread JavaFX ne reçoit que des images terminées.
+ */
+public class DecodeScheduler {
+
+    /**
+     * Classes de priorité, de la plus urgente à la moins urgente
+     */
+    public enum Priority {
+        // Frame à afficher maintenant (lecture, aperçus)
+        VISIBLE_NOW,
+        // Frames sur le point d'être affichées (frame suivante, préparation d'une action)
+        NEXT_FRAME,
+        // Ce que l'utilisateur risque de demander ensuite
+        PREFETCH,
+        // Rendus complets d'une animation (animation aplatie)
+        EXPORT
+    }
+
+    // La version des LUT et la génération du fichier font partie de la clé : une demande lancée avant
+    // un changement de couleur ou une modification du sprite ne sert pas à ceux qui demandent après.
+    // prepareOnly : seulement mettre le sprite en cache, sans produire d'image
+    private record Key(BodyPart part, String path, int width, int height, long lutVersion, long sourceGeneration,
+                       boolean prepareOnly) { }
+
+    /**
+     * Une demande en cours, partagée par tous ses demandeurs
+     */
+    private static class Request {
+        private final Key key;
+        private final CompletableFuture<Image> result = new CompletableFuture<>();
+        private Priority priority;
+        private int waiters = 0;
+        private boolean started = false;
+
+        Request(Key key, Priority priority) {
+            this.key = key;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Place d'une demande dans la file ; une demande dont la priorité monte y est ajoutée une seconde fois
+     */
+    private class Task implements Runnable, Comparable<Task> {
+        private final Request request;
+        private final Priority priority;
+        private final long sequence = sequences.getAndIncrement();
+
+        Task(Request request, Priority priority) {
+            this.request = request;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            execute(request);
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            // Priorité d'abord, puis ordre d'arrivée
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final SpriteCache spriteCache;
+    private final LUTManager lutManager;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong sequences = new AtomicLong();
+    private final Map<Key, Request> inFlight = new HashMap<>();
+
+    /**
+     * @param spriteCache Cache des sprites décodés
+     * @param lutManager LUT appliquées après décodage
+     */
+    public DecodeScheduler(SpriteCache spriteCache, LUTManager lutManager) {
+        this.spriteCache = spriteCache;
+        this.lutManager = lutManager;
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "sprite-decoder-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Sprite à sa taille d'origine, LUT appliquée
+     * @see #decode(BodyPart, String, int, int, Priority)
+     */
+    public CompletableFuture<Image> decode(BodyPart part, String path, Priority priority) {
+        return decode(part, path, part.getNativeSize(), part.getNativeSize(), priority);
+    }
+
+    /**
+     * Demande un sprite décodé à une taille donnée, LUT de la partie appliquée
+     * @return Se termine sur un thread de décodage (ou tout de suite si l'image est prête).
+     *         L'annuler abandonne la demande si plus personne ne l'attend.
+     */
+    public CompletableFuture<Image> decode(BodyPart part, String path, int width, int height, Priority priority) {
+        Image ready = getIfReady(part, path, width, height);
+        if (ready != null) {
+            return CompletableFuture.completedFuture(ready);
+        }
+        return submit(keyFor(part, path, width, height, false), priority);
+    }
+
+    /**
+     * Met en cache le sprite à sa taille d'origine sous la forme dont la partie a besoin (décodé, ou
+     * indexé pour sa LUT) sans développer de palette : rien d'autre que le cache n'occupe de mémoire
+     * @return Se termine (avec null) quand le sprite est en cache
+     */
+    public CompletableFuture<Image> prepare(BodyPart part, String path, Priority priority) {
+        if (isPrepared(part, path)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return submit(keyFor(part, path, part.getNativeSize(), part.getNativeSize(), true), priority);
+    }
+
+    private Key keyFor(BodyPart part, String path, int width, int height, boolean prepareOnly) {
+        return new Key(part, path, width, height, lutManager.getStateVersion(), spriteCache.generationOf(path),
+                prepareOnly);
+    }
+
+    private CompletableFuture<Image> submit(Key key, Priority priority) {
+        Request request;
+        synchronized (inFlight) {
+            request = inFlight.get(key);
+            if (request == null) {
+                request = new Request(key, priority);
+                inFlight.put(key, request);
+                executor.execute(new Task(request, priority));
+            } else if (!request.started && priority.compareTo(request.priority) < 0) {
+                // Demandée plus urgemment entre-temps : remonter dans la file
+                request.priority = priority;
+                executor.execute(new Task(request, priority));
+            }
+            request.waiters++;
+        }
+
+        // Chaque demandeur a sa propre future : annuler la sienne ne touche pas aux autres
+        Request shared = request;
+        CompletableFuture<Image> handle = new CompletableFuture<>();
+        shared.result.whenComplete((image, error) -> {
+            if (error != null) {
+                handle.completeExceptionally(error);
+            } else {
+                handle.complete(image);
+            }
+        });
+        handle.whenComplete((image, error) -> {
+            if (handle.isCancelled()) {
+                release(shared);
+            }
+        });
+        return handle;
+    }
+
+    /**
+     * Image finale si elle est déjà en cache, sans rien calculer. Une partie recolorée n'est jamais
+     * prête : seule sa forme indexée est gardée, elle est développée sur un thread de décodage.
+     * @return L'image, ou null s'il faut la demander avec decode
+     */
+    public Image getIfReady(BodyPart part, String path, int width, int height) {
+        if (lutManager.recolorFor(part) != null) {
+            return null;
+        }
+        return spriteCache.peek(path, width, height);
+    }
+
+    public Image getIfReady(BodyPart part, String path) {
+        return getIfReady(part, path, part.getNativeSize(), part.getNativeSize());
+    }
+
+    /**
+     * @return true si le sprite est en cache sous la forme dont la partie a besoin (décodé, ou indexé
+     *         pour sa LUT), il ne reste au plus qu'à développer sa palette
+     */
+    public boolean isPrepared(BodyPart part, String path) {
+        int size = part.getNativeSize();
+        LUTManager.Recolor recolor = lutManager.recolorFor(part);
+        return recolor != null
+                ? spriteCache.containsIndexed(path, size, size, recolor.lut())
+                : spriteCache.contains(path, size, size);
+    }
+
+    /**
+     * Place qu'un sprite de la partie occupera dans le cache une fois préparé (approchée pour la forme
+     * indexée : un octet par pixel, sans les couleurs recopiées)
+     */
+    public long preparedBytes(BodyPart part) {
+        int size = part.getNativeSize();
+        return lutManager.recolorFor(part) != null ? (long) size * size : SpriteCache.imageBytes(size, size);
+    }
+
+    /**
+     * Arrête les threads de décodage, les demandes en attente sont abandonnées
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void execute(Request request) {
+        synchronized (inFlight) {
+            // Déjà calculée via une autre place dans la file, ou abandonnée
+            if (request.started || request.result.isDone()) {
+                return;
+            }
+            request.started = true;
+        }
+
+        try {
+            request.result.complete(render(request.key));
+        } catch (RuntimeException e) {
+            request.result.completeExceptionally(e);
+        } finally {
+            synchronized (inFlight) {
+                inFlight.remove(request.key, request);
+            }
+        }
+    }
+
+    /**
+     * Décode le sprite, ou développe sa forme indexée à travers la palette de la variante
+     */
+    private Image render(Key key) {
+        LUTManager.Recolor recolor = lutManager.recolorFor(key.part());
+        if (recolor != null) {
+            IndexedSprite indexed = spriteCache.getIndexed(key.path(), key.width(), key.height(), recolor.lut());
+            if (indexed != null) {
+                return key.prepareOnly() ? null : indexed.expand(recolor.palette());
+            }
+        }
+        // Pas de LUT, ou LUT trop riche pour un index sur un octet : recoloration de l'image décodée
+        Image decoded = spriteCache.get(key.path(), key.width(), key.height());
+        return key.prepareOnly() ? null : lutManager.applyLUT(key.part(), decoded);
+    }
+
+    /**
+     * Un demandeur a annulé : la demande est abandonnée si elle n'a plus personne et n'a pas commencé
+     */
+    private void release(Request request) {
+        synchronized (inFlight) {
+            request.waiters--;
+            if (request.waiters > 0 || request.started) {
+                return;
+            }
+            inFlight.remove(request.key, request);
+        }
+        request.result.cancel(false);
+    }
+}
@@ -0,0 +1,82 @@
+package com.nilecramm.fomtools;
+
+import java.util.Arrays;
+
+/**
+ * Planning d'une boucle d'animation pour une partie du corps : débuts des frames
+ * en cumul des durées, pour retrouver la frame courante par recherche dichotomique
+ */
+public class FrameSchedule {
+    private final FrameTrack track;
+    private final double[] starts;
+    private final double totalDuration;
+
+    // Indice de la dernière frame affichée, -1 si aucune
+    private int displayedIndex = -1;
+
+    /**
+     * @param track Les frames de la boucle
+     */
+    public FrameSchedule(FrameTrack track) {
+        this.track = track;
+        this.starts = new double[track.size()];
+
+        double total = 0;
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = total;
+            total += track.duration(i);
+        }
+        this.totalDuration = total;
+    }
+
+    /**
+     * Indice de la frame active à un instant donné de la boucle
+     * @param elapsed Temps d'animation écoulé depuis le début, en secondes à vitesse normale
+     */
+    public int indexAt(double elapsed) {
+        if (totalDuration <= 0) {
+            // Toutes les frames commencent à 0 : la dernière l'emporte
+            return starts.length - 1;
+        }
+
+        double t = elapsed % totalDuration;
+        int index = Arrays.binarySearch(starts, t);
+        if (index < 0) {
+            // Point d'insertion - 1 : dernière frame commencée avant t
+            return -index - 2;
+        }
+
+        // Plusieurs frames de durée nulle peuvent commencer au même instant : garder la dernière
+        while (index + 1 < starts.length && starts[index + 1] == t) {
+            index++;
+        }
+        return index;
+    }
+
+    public FrameTrack getTrack() {
+        return track;
+    }
+
+    public int getFrameCount() {
+        return starts.length;
+    }
+
+    /**
+     * Instant de début d'une frame dans la boucle
+     */
+    public double getStart(int index) {
+        return starts[index];
+    }
+
+    public double getTotalDuration() {
+        return totalDuration;
+    }
+
+    public int getDisplayedIndex() {
+        return displayedIndex;
+    }
+
+    public void setDisplayedIndex(int displayedIndex) {
+        this.displayedIndex = displayedIndex;
+    }
+}
@@ -0,0 +1,98 @@
+package com.nilecramm.fomtools;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chemins des sprites d'une partie indexés par numéro de frame. Les numéros sont denses :
+ * ils sont rangés dans un simple tableau, et seuls les numéros démesurés (ex: une date dans
+ * le nom du fichier) passent par une map à part.
+ */
+public class FrameTable {
+    // Au-delà, un numéro de frame ne justifie pas d'agrandir le tableau
+    private static final int MAX_DENSE_FRAME = 1 << 16;
+
+    // Remplacé en entier à chaque écriture : la lecture d'une frame se fait sans verrou,
+    // y compris depuis le thread de préchargement pendant un rechargement à chaud
+    private volatile String[] paths = new String[0];
+    private volatile Map<Integer, String> sparse;
+    private int size = 0;
+
+    /**
+     * Ajoute ou remplace le sprite d'une frame
+     */
+    public synchronized void put(int frame, String path) {
+        if (frame >= 0 && frame < MAX_DENSE_FRAME) {
+            String[] copy = Arrays.copyOf(paths, Math.max(frame + 1, paths.length));
+            if (copy[frame] == null) {
+                size++;
+            }
+            copy[frame] = path;
+            paths = copy;
+        } else {
+            if (sparse == null) {
+                sparse = new ConcurrentHashMap<>();
+            }
+            if (sparse.put(frame, path) == null) {
+                size++;
+            }
+        }
+    }
+
+    /**
+     * Retire le sprite d'une frame
+     */
+    public synchronized void remove(int frame) {
+        if (frame >= 0 && frame < paths.length) {
+            if (paths[frame] != null) {
+                String[] copy = paths.clone();
+                copy[frame] = null;
+                paths = copy;
+                size--;
+            }
+        } else if (sparse != null && sparse.remove(frame) != null) {
+            size--;
+        }
+    }
+
+    /**
+     * @return Le chemin du sprite de la frame, ou null
+     */
+    public String get(int frame) {
+        String[] dense = paths;
+        if (frame >= 0 && frame < dense.length) {
+            return dense[frame];
+        }
+        Map<Integer, String> overflow = sparse;
+        return overflow != null ? overflow.get(frame) : null;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Numéros de toutes les frames présentes, dans l'ordre croissant
+     */
+    public synchronized int[] frames() {
+        int[] frames = new int[size];
+        int count = 0;
+        for (int frame = 0; frame < paths.length; frame++) {
+            if (paths[frame] != null) {
+                frames[count++] = frame;
+            }
+        }
+        if (sparse != null) {
+            for (int frame : sparse.keySet()) {
+                frames[count++] = frame;
+            }
+            Arrays.sort(frames);
+        }
+        return frames;
+    }
+}
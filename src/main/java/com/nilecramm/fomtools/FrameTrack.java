@@ -0,0 +1,142 @@
+package com.nilecramm.fomtools;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Arrays;
+
+/**
+ * Frames d'une action dans une direction, stockées en tableaux parallèles de primitives
+ * au lieu d'un objet Frame par frame. Les accesseurs par indice servent de vue légère.
+ */
+public class FrameTrack {
+    private final int[] offsetX;
+    private final int[] offsetY;
+    private final int[] targetFrame;
+    private final int[] depth;
+    private final double[] duration;
+
+    // broadcast_message est rare : tableau alloué seulement si au moins une frame en a un
+    private final int[] broadcastMessage;
+    static final int NO_BROADCAST = Integer.MIN_VALUE;
+
+    public FrameTrack(int[] offsetX, int[] offsetY, int[] targetFrame, int[] depth, double[] duration, int[] broadcastMessage) {
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.targetFrame = targetFrame;
+        this.depth = depth;
+        this.duration = duration;
+        this.broadcastMessage = broadcastMessage;
+    }
+
+    /**
+     * Construit la piste à partir des frames lues dans le JSON (les objets Frame ne sont pas gardés)
+     */
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static FrameTrack fromFrames(Frame[] frames) {
+        int count = frames.length;
+        int[] offsetX = new int[count];
+        int[] offsetY = new int[count];
+        int[] targetFrame = new int[count];
+        int[] depth = new int[count];
+        double[] duration = new double[count];
+        int[] broadcastMessage = null;
+
+        for (int i = 0; i < count; i++) {
+            Frame frame = frames[i];
+            offsetX[i] = frame.offset != null && frame.offset.length > 0 ? frame.offset[0] : 0;
+            offsetY[i] = frame.offset != null && frame.offset.length > 1 ? frame.offset[1] : 0;
+            targetFrame[i] = frame.target_frame;
+            depth[i] = frame.depth;
+            duration[i] = frame.duration;
+
+            if (frame.broadcast_message != null) {
+                if (broadcastMessage == null) {
+                    broadcastMessage = new int[count];
+                    Arrays.fill(broadcastMessage, NO_BROADCAST);
+                }
+                broadcastMessage[i] = frame.broadcast_message;
+            }
+        }
+        return new FrameTrack(offsetX, offsetY, targetFrame, depth, duration, broadcastMessage);
+    }
+
+    /**
+     * Recrée les objets Frame (sérialisation, débogage)
+     */
+    @JsonValue
+    public Frame[] toFrames() {
+        Frame[] frames = new Frame[size()];
+        for (int i = 0; i < frames.length; i++) {
+            Frame frame = new Frame();
+            frame.offset = new int[] {offsetX[i], offsetY[i]};
+            frame.duration = duration[i];
+            frame.target_frame = targetFrame[i];
+            frame.depth = depth[i];
+            frame.broadcast_message = broadcastMessage(i);
+            frames[i] = frame;
+        }
+        return frames;
+    }
+
+    public int size() {
+        return targetFrame.length;
+    }
+
+    public int offsetX(int index) {
+        return offsetX[index];
+    }
+
+    public int offsetY(int index) {
+        return offsetY[index];
+    }
+
+    public int targetFrame(int index) {
+        return targetFrame[index];
+    }
+
+    public int depth(int index) {
+        return depth[index];
+    }
+
+    public double duration(int index) {
+        return duration[index];
+    }
+
+    /**
+     * Deux pistes sont égales si toutes leurs frames sont identiques (comparaison des rechargements)
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FrameTrack)) {
+            return false;
+        }
+        FrameTrack other = (FrameTrack) o;
+        return Arrays.equals(offsetX, other.offsetX) && Arrays.equals(offsetY, other.offsetY)
+                && Arrays.equals(targetFrame, other.targetFrame) && Arrays.equals(depth, other.depth)
+                && Arrays.equals(duration, other.duration)
+                && Arrays.equals(broadcastMessage, other.broadcastMessage);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(targetFrame);
+        result = 31 * result + Arrays.hashCode(offsetX);
+        result = 31 * result + Arrays.hashCode(offsetY);
+        result = 31 * result + Arrays.hashCode(duration);
+        return result;
+    }
+
+    /**
+     * @return Le message de la frame, ou null si elle n'en a pas
+     */
+    public Integer broadcastMessage(int index) {
+        if (broadcastMessage == null || broadcastMessage[index] == NO_BROADCAST) {
+            return null;
+        }
+        return broadcastMessage[index];
+    }
+}
@@ -0,0 +1,100 @@
+package com.nilecramm.fomtools;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Préparation des frames d'une action avant sa lecture : chaque sprite distinct de chaque partie
+ * est décodé (et recoloré si une LUT est active) en parallèle, pour que la première boucle
+ * ne décode plus rien sur le thread JavaFX.
+ */
+public class FrameWarmup {
+
+    /**
+     * Un sprite à préparer
+     */
+    public record Job(BodyPart part, String imagePath) { }
+
+    private final List<Job> jobs;
+    private final AtomicInteger completed = new AtomicInteger();
+    private final List<CompletableFuture<?>> decodes = new ArrayList<>();
+
+    public FrameWarmup(List<Job> jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * Sprites distincts (target_frame) de chaque partie pour les plannings donnés
+     * @param schedules Plannings de l'action et de la direction choisies
+     * @param spriteLoader Sprites du personnage
+     */
+    public static List<Job> collectJobs(Map<BodyPart, FrameSchedule> schedules, SpriteLoader spriteLoader) {
+        List<Job> jobs = new ArrayList<>();
+        for (Map.Entry<BodyPart, FrameSchedule> entry : schedules.entrySet()) {
+            addJobs(jobs, entry.getKey(), entry.getValue().getTrack(), spriteLoader);
+        }
+        return jobs;
+    }
+
+    /**
+     * Ajoute les sprites distincts d'une piste
+     */
+    static void addJobs(List<Job> jobs, BodyPart part, FrameTrack track, SpriteLoader spriteLoader) {
+        // Une même frame revient souvent plusieurs fois dans une boucle
+        Set<String> paths = new LinkedHashSet<>();
+        for (int i = 0; i < track.size(); i++) {
+            String path = spriteLoader.getSpritePath(part, track.targetFrame(i));
+            if (path != null) {
+                paths.add(path);
+            }
+        }
+        for (String path : paths) {
+            jobs.add(new Job(part, path));
+        }
+    }
+
+    /**
+     * Lance la préparation
+     * @param scheduler Décodage et recoloration des sprites
+     * @param onProgress Reçoit l'avancement (0 à 1), sur un thread de décodage
+     * @return Se termine quand tous les sprites sont prêts
+     */
+    public CompletableFuture<Void> start(DecodeScheduler scheduler, DoubleConsumer onProgress) {
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[jobs.size()];
+        for (int i = 0; i < tasks.length; i++) {
+            Job job = jobs.get(i);
+            CompletableFuture<?> decode = scheduler.decode(job.part(), job.imagePath(),
+                    DecodeScheduler.Priority.NEXT_FRAME);
+            decodes.add(decode);
+
+            // Un sprite illisible sera affiché vide, il ne doit pas bloquer la lecture
+            tasks[i] = decode.handle((image, error) -> {
+                if (error != null && !decode.isCancelled()) {
+                    error.printStackTrace();
+                }
+                onProgress.accept((double) completed.incrementAndGet() / jobs.size());
+                return null;
+            });
+        }
+        return CompletableFuture.allOf(tasks);
+    }
+
+    /**
+     * Abandonne les sprites pas encore commencés (changement d'action pendant la préparation)
+     */
+    public void cancel() {
+        for (CompletableFuture<?> decode : decodes) {
+            decode.cancel(false);
+        }
+    }
+
+    public int size() {
+        return jobs.size();
+    }
+}
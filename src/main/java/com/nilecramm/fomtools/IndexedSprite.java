@@ -0,0 +1,101 @@
+package com.nilecramm.fomtools;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+import java.util.Arrays;
+
+/**
+ * Sprite converti en indices de couleurs template (un octet par pixel).
+ * Appliquer une variante revient à remplacer la palette : chaque indice est
+ * développé à travers la colonne de la variante dans la LUT.
+ */
+public class IndexedSprite {
+    // Nombre maximal de couleurs template représentables sur un octet
+    public static final int MAX_TEMPLATES = 254;
+
+    // Marqueurs du masque de recopie
+    private static final byte TRANSPARENT = (byte) 0xFE;
+    private static final byte PASSTHROUGH = (byte) 0xFF;
+
+    private final int width;
+    private final int height;
+    private final byte[] indices;
+
+    // Couleurs d'origine des pixels non template, dans l'ordre de parcours
+    private final int[] passthroughColors;
+
+    private IndexedSprite(int width, int height, byte[] indices, int[] passthroughColors) {
+        this.width = width;
+        this.height = height;
+        this.indices = indices;
+        this.passthroughColors = passthroughColors;
+    }
+
+    /**
+     * Convertit un sprite en indices de la LUT (une seule fois par sprite et par LUT)
+     * @return Le sprite indexé, ou null si la LUT a trop de couleurs template pour un octet
+     */
+    public static IndexedSprite encode(Image sprite, LUTTable lut) {
+        if (lut.getTemplateCount() > MAX_TEMPLATES) {
+            return null;
+        }
+
+        int width = (int) sprite.getWidth();
+        int height = (int) sprite.getHeight();
+        int[] pixels = LUTRecolorEngine.readPixels(sprite);
+        byte[] indices = new byte[pixels.length];
+        int[] passthrough = new int[16];
+        int passthroughCount = 0;
+
+        for (int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+            int template = (argb >>> 24) != 0 ? lut.findTemplate(argb) : -1;
+
+            if (template >= 0) {
+                indices[i] = (byte) template;
+            } else if (argb == 0) {
+                indices[i] = TRANSPARENT;
+            } else {
+                indices[i] = PASSTHROUGH;
+                if (passthroughCount == passthrough.length) {
+                    passthrough = Arrays.copyOf(passthrough, passthroughCount * 2);
+                }
+                passthrough[passthroughCount++] = argb;
+            }
+        }
+
+        return new IndexedSprite(width, height, indices, Arrays.copyOf(passthrough, passthroughCount));
+    }
+
+    /**
+     * Mémoire occupée par les indices et les couleurs recopiées, en octets
+     */
+    public long byteSize() {
+        return indices.length + 4L * passthroughColors.length;
+    }
+
+    /**
+     * Développe les indices à travers une palette de variante
+     * @param palette Couleur ARGB de chaque couleur template pour la variante
+     * @return Une nouvelle image recolorée
+     */
+    public Image expand(int[] palette) {
+        int[] pixels = new int[indices.length];
+        int passthroughIndex = 0;
+
+        for (int i = 0; i < indices.length; i++) {
+            byte index = indices[i];
+            if (index == PASSTHROUGH) {
+                pixels[i] = passthroughColors[passthroughIndex++];
+            } else if (index != TRANSPARENT) {
+                pixels[i] = palette[index & 0xFF];
+            }
+        }
+
+        WritableImage result = new WritableImage(width, height);
+        result.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return result;
+    }
+}
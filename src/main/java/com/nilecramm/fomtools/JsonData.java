@@ -1,32 +1,275 @@
 package com.nilecramm.fomtools;
 
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class JsonData {
-    public Map<String, ActionWrapper> base_arm_left;
-    public Map<String, ActionWrapper> base_arm_right;
-    public Map<String, ActionWrapper> base_chest;
-    public Map<String, ActionWrapper> base_head;
-    public Map<String, ActionWrapper> base_legs;
-    public Map<String, ActionWrapper> sleeve_left;
-    public Map<String, ActionWrapper> tool;
-    public Map<String, ActionWrapper> tool_effect;
-    public Map<String, ActionWrapper> sleeve_right;
-    public Map<String, ActionWrapper> head_gear;
-    public Map<String, ActionWrapper> face_gear;
-    public Map<String, ActionWrapper> hair_front;
-    public Map<String, ActionWrapper> eyes;
-    public Map<String, ActionWrapper> hair_mid;
-    public Map<String, ActionWrapper> face;
-    public Map<String, ActionWrapper> facial_hair;
-    public Map<String, ActionWrapper> waist;
-    public Map<String, ActionWrapper> feet;
-    public Map<String, ActionWrapper> legs;
-    public Map<String, ActionWrapper> torso;
-    public Map<String, ActionWrapper> back_gear;
-    public Map<String, ActionWrapper> hair_back;
-    public Map<String, ActionWrapper> head_gear_back;
-    public Map<String, ActionWrapper> base_effect;
+
+    /**
+     * Décode une action chargée paresseusement à partir de son emplacement
+     */
+    public interface ActionDecoder {
+        ActionWrapper decode(long location) throws IOException;
+    }
+
+    // Marque une action présente dans le fichier mais nulle, ou déjà cherchée sans succès
+    private static final ActionWrapper MISSING = new ActionWrapper();
+    // Emplacement d'une action que la partie ne contient pas
+    private static final long NO_LOCATION = -1;
+    // Conversion des actions reçues par Jackson sous forme d'arbre
+    private static final ObjectMapper TREE_READER = new ObjectMapper();
+
+    private final ActionTable actionTable = new ActionTable();
+
+    // Actions de chaque partie (indice : ordinal de la partie, puis identifiant d'action), null si la partie est absente.
+    // En mode paresseux, les cases sont remplies au premier accès à partir de locationsByPart.
+    private final ActionWrapper[][] actionsByPart = new ActionWrapper[BodyPart.all().length][];
+    private final long[][] locationsByPart = new long[BodyPart.all().length][];
+    private final ActionDecoder[] decoders = new ActionDecoder[BodyPart.all().length];
+
+    // Fichier source régénéré : les actions pas encore décodées ne doivent plus y être lues
+    private volatile boolean stale = false;
+    private Runnable onStale;
+
+    /**
+     * Dictionnaire des actions de toutes les parties
+     */
+    @JsonIgnore
+    public ActionTable getActionTable() {
+        return actionTable;
+    }
+
+    /**
+     * Range les actions décodées d'une partie par identifiant (une clé en double garde la dernière valeur)
+     * @param names Noms des actions, dans l'ordre du fichier
+     * @param actions Action de chaque nom, null si sa valeur est nulle
+     */
+    public synchronized void setActions(BodyPart part, List<String> names, List<ActionWrapper> actions) {
+        int[] ids = intern(names);
+        ActionWrapper[] byId = new ActionWrapper[actionTable.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ActionWrapper action = actions.get(i);
+            byId[ids[i]] = action != null ? action : MISSING;
+        }
+
+        actionsByPart[part.ordinal()] = byId;
+        locationsByPart[part.ordinal()] = null;
+        decoders[part.ordinal()] = null;
+    }
+
+    /**
+     * Range l'emplacement des actions d'une partie par identifiant, elles seront décodées au premier accès
+     * @param names Noms des actions, dans l'ordre du fichier
+     * @param locations Emplacement de chaque action, -1 si sa valeur est nulle
+     * @param decoder Décodage d'une action à partir de son emplacement
+     */
+    public synchronized void setLazyActions(BodyPart part, List<String> names, long[] locations, ActionDecoder decoder) {
+        int[] ids = intern(names);
+        long[] byId = new long[actionTable.size()];
+        Arrays.fill(byId, NO_LOCATION);
+        ActionWrapper[] decoded = new ActionWrapper[byId.length];
+        for (int i = 0; i < ids.length; i++) {
+            byId[ids[i]] = locations[i];
+            decoded[ids[i]] = locations[i] < 0 ? MISSING : null;
+        }
+
+        actionsByPart[part.ordinal()] = decoded;
+        locationsByPart[part.ordinal()] = byId;
+        decoders[part.ordinal()] = decoder;
+    }
+
+    private int[] intern(List<String> names) {
+        int[] ids = new int[names.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = actionTable.intern(names.get(i));
+        }
+        return ids;
+    }
+
+    /**
+     * @return true si la partie est présente dans le fichier
+     */
+    public synchronized boolean hasPart(BodyPart part) {
+        return actionsByPart[part.ordinal()] != null;
+    }
+
+    /**
+     * @return true si le fichier contient l'action pour cette partie (sans la décoder)
+     */
+    public synchronized boolean hasAction(BodyPart part, int actionId) {
+        ActionWrapper[] actions = actionsByPart[part.ordinal()];
+        if (actions == null || actionId < 0 || actionId >= actions.length) {
+            return false;
+        }
+        long[] locations = locationsByPart[part.ordinal()];
+        return actions[actionId] != null || (locations != null && locations[actionId] != NO_LOCATION);
+    }
+
+    /**
+     * Noms des actions d'une partie, dans l'ordre des identifiants
+     */
+    public synchronized List<String> actionNames(BodyPart part) {
+        List<String> names = new ArrayList<>();
+        ActionWrapper[] actions = actionsByPart[part.ordinal()];
+        for (int id = 0; actions != null && id < actions.length; id++) {
+            if (hasAction(part, id)) {
+                names.add(actionTable.nameOf(id));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Action d'une partie par identifiant, sans hachage du nom
+     * @return L'action, ou null si la partie ne la contient pas (ou si le fichier a changé
+     *         avant qu'elle soit décodée)
+     */
+    public synchronized ActionWrapper getAction(BodyPart part, int actionId) {
+        ActionWrapper[] actions = actionsByPart[part.ordinal()];
+        if (actions == null || actionId < 0 || actionId >= actions.length) {
+            return null;
+        }
+
+        ActionWrapper action = actions[actionId];
+        if (action == null && locationsByPart[part.ordinal()] != null) {
+            if (stale) {
+                return null; // Les positions relevées ne correspondent plus au fichier
+            }
+
+            // Premier accès : en mode paresseux l'action n'est décodée qu'ici
+            try {
+                action = decode(part, actionId);
+            } catch (StreamingJsonLoader.SourceChangedException e) {
+                System.err.println(e.getMessage() + ", rechargement des animations");
+                markStale();
+                return null;
+            } catch (IOException e) {
+                throw new IllegalStateException("Impossible de décoder l'action " + actionTable.nameOf(actionId), e);
+            }
+            actions[actionId] = action != null ? action : MISSING;
+        }
+        return action != MISSING ? action : null;
+    }
+
+    /**
+     * Action d'une partie pour un parcours complet (compilation de l'index) : une action
+     * pas encore décodée l'est sans être gardée en mémoire
+     * @return L'action, ou null si la partie ne la contient pas
+     */
+    public synchronized ActionWrapper readAction(BodyPart part, int actionId) throws IOException {
+        ActionWrapper[] actions = actionsByPart[part.ordinal()];
+        if (actions == null || actionId < 0 || actionId >= actions.length) {
+            return null;
+        }
+
+        ActionWrapper action = actions[actionId];
+        if (action == null && locationsByPart[part.ordinal()] != null) {
+            action = decode(part, actionId);
+        }
+        return action != MISSING ? action : null;
+    }
+
+    private ActionWrapper decode(BodyPart part, int actionId) throws IOException {
+        long location = locationsByPart[part.ordinal()][actionId];
+        return location != NO_LOCATION ? decoders[part.ordinal()].decode(location) : null;
+    }
+
+    /**
+     * Signale que le fichier source a changé : seules les actions déjà décodées restent disponibles
+     */
+    public void markStale() {
+        Runnable listener;
+        synchronized (this) {
+            if (stale) {
+                return;
+            }
+            stale = true;
+            listener = onStale;
+        }
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    @JsonIgnore
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * @param onStale Appelé une fois quand un décodage découvre que le fichier a changé (pour le relire)
+     */
+    public synchronized void setOnStale(Runnable onStale) {
+        this.onStale = onStale;
+    }
+
+    /**
+     * Action d'une partie seulement si elle a déjà été décodée (rien n'est lu sur le disque)
+     * @return L'action, ou null si elle est absente ou n'a jamais été demandée
+     */
+    public synchronized ActionWrapper peekAction(BodyPart part, String actionName) {
+        int actionId = actionTable.idOf(actionName);
+        ActionWrapper[] actions = actionsByPart[part.ordinal()];
+        if (actions == null || actionId < 0 || actionId >= actions.length) {
+            return null;
+        }
+
+        ActionWrapper action = actions[actionId];
+        return action != MISSING ? action : null;
+    }
+
+    /**
+     * Reçoit chaque champ lu par Jackson : les parties sont rangées par identifiant d'action,
+     * les champs inconnus et les parties nulles sont ignorés
+     */
+    @JsonAnySetter
+    public void setPart(String partId, JsonNode actions) throws JsonProcessingException {
+        BodyPart part = BodyPart.fromId(partId);
+        if (part == null || actions == null || !actions.isObject()) {
+            return;
+        }
+
+        List<String> names = new ArrayList<>();
+        List<ActionWrapper> decoded = new ArrayList<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = actions.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            names.add(field.getKey());
+            decoded.add(TREE_READER.treeToValue(field.getValue(), ActionWrapper.class));
+        }
+        setActions(part, names, decoded);
+    }
+
+    /**
+     * Parties par nom, dans l'ordre de BodyPart, pour l'écriture par Jackson
+     */
+    @JsonAnyGetter
+    public Map<String, Map<String, ActionWrapper>> partsById() {
+        Map<String, Map<String, ActionWrapper>> byId = new LinkedHashMap<>();
+        for (BodyPart part : BodyPart.all()) {
+            if (!hasPart(part)) {
+                continue;
+            }
+            Map<String, ActionWrapper> actions = new LinkedHashMap<>();
+            for (String name : actionNames(part)) {
+                actions.put(name, getAction(part, actionTable.idOf(name)));
+            }
+            byId.put(part.getId(), actions);
+        }
+        return byId;
+    }
 }
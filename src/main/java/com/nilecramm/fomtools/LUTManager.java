@@ -1,26 +1,30 @@
 package com.nilecramm.fomtools;
 
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;
-import javafx.scene.paint.Color;
 
 import java.io.File;
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.List;
 
 public class LUTManager {
-    private final Map<String, Image> loadedLUTs = new HashMap<>();
-    private final Map<String, Integer> selectedColors = new HashMap<>();
-    private final Map<String, Map<Color, Integer>> colorMappings = new HashMap<>();
+    private final Map<BodyPart, Image> loadedLUTs = new EnumMap<>(BodyPart.class);
+    private final Map<BodyPart, Integer> selectedColors = new EnumMap<>(BodyPart.class);
+    private final Map<BodyPart, LUTTable> lutTables = new EnumMap<>(BodyPart.class);
+
+    // Incrémenté à chaque changement d'état des LUT (chargement, variante, suppression)
+    private long stateVersion = 0;
 
     /**
      * Charge un fichier LUT et analyse les couleurs template
      */
-    public boolean loadLUT(String partName, String lutPath) {
+    public synchronized boolean loadLUT(String partName, String lutPath) {
+        BodyPart part = BodyPart.fromId(partName);
+        if (part == null) {
+            return false;
+        }
+
         try {
             File lutFile = new File(lutPath);
             if (!lutFile.exists()) {
@@ -28,11 +32,12 @@ public class LUTManager {
             }
 
             Image lutImage = new Image(lutFile.toURI().toString());
-            loadedLUTs.put(partName, lutImage);
-            selectedColors.put(partName, 0);
+            loadedLUTs.put(part, lutImage);
+            selectedColors.put(part, 0);
+            stateVersion++;
 
             // Analyser les couleurs template (ligne 0 de chaque colonne)
-            analyzeLUTColors(partName, lutImage);
+            analyzeLUTColors(part, lutImage);
 
             return true;
         } catch (Exception e) {
@@ -44,11 +49,12 @@ public class LUTManager {
     /**
      * Obtient les indices des variantes disponibles
      */
-    public List<Integer> getAvailableVariantIndices(String partName) {
-        Image lut = loadedLUTs.get(partName);
-        Map<Color, Integer> colorMapping = colorMappings.get(partName);
+    public synchronized List<Integer> getAvailableVariantIndices(String partName) {
+        BodyPart part = BodyPart.fromId(partName);
+        Image lut = loadedLUTs.get(part);
+        LUTTable lutTable = lutTables.get(part);
 
-        if (lut == null || colorMapping == null || colorMapping.isEmpty()) {
+        if (lut == null || lutTable == null || lutTable.getTemplateCount() == 0) {
             return new ArrayList<>();
         }
 
@@ -68,124 +74,133 @@ public class LUTManager {
      * Applique la LUT à un sprite
      */
     public Image applyLUT(String partName, Image originalSprite) {
-        Image lut = loadedLUTs.get(partName);
-        Integer variantColumn = selectedColors.get(partName);
-        Map<Color, Integer> colorMapping = colorMappings.get(partName);
+        BodyPart part = BodyPart.fromId(partName);
+        return part != null ? applyLUT(part, originalSprite) : originalSprite;
+    }
 
-        if (lut == null || variantColumn == null || variantColumn == 0 || colorMapping == null) {
+    public Image applyLUT(BodyPart part, Image originalSprite) {
+        Recolor recolor = recolorFor(part);
+        if (recolor == null || originalSprite.getPixelReader() == null) {
             return originalSprite; // Pas de LUT ou couleur de base
         }
 
-        int width = (int) originalSprite.getWidth();
-        int height = (int) originalSprite.getHeight();
-
-        WritableImage result = new WritableImage(width, height);
-        PixelReader spriteReader = originalSprite.getPixelReader();
-        PixelReader lutReader = lut.getPixelReader();
-        PixelWriter resultWriter = result.getPixelWriter();
-
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++) {
-                Color originalColor = spriteReader.getColor(x, y);
-
-                if (originalColor.getOpacity() > 0) {
-                    // Chercher si cette couleur correspond à une couleur template (colonne 0)
-                    Integer templateRow = findMatchingTemplateColor(originalColor, colorMapping);
-
-                    if (templateRow != null) {
-                        // Remplacer par la couleur de la variante sélectionnée (même ligne, colonne différente)
-                        Color newColor = lutReader.getColor(variantColumn, templateRow);
-                        resultWriter.setColor(x, y, newColor);
-                    } else {
-                        resultWriter.setColor(x, y, originalColor);
-                    }
-                } else {
-                    resultWriter.setColor(x, y, originalColor);
-                }
-            }
+        IndexedSprite indexed = IndexedSprite.encode(originalSprite, recolor.lut());
+        if (indexed != null) {
+            return indexed.expand(recolor.palette());
         }
-
-        return result;
+        // Trop de couleurs template pour des indices sur un octet
+        return LUTRecolorEngine.recolor(originalSprite, recolor.lut(), recolor.variant());
     }
 
     /**
-     * Trouve la ligne LUT correspondant à une couleur du sprite
+     * LUT et variante appliquées à une partie
      */
-    private Integer findMatchingTemplateColor(Color spriteColor, Map<Color, Integer> colorMapping) {
-        for (Map.Entry<Color, Integer> entry : colorMapping.entrySet()) {
-            if (colorsMatch(spriteColor, entry.getKey())) {
-                return entry.getValue(); // Retourne la LIGNE, pas la colonne
-            }
+    public record Recolor(LUTTable lut, int variant) {
+        public int[] palette() {
+            return lut.getPalette(variant);
         }
-        return null;
     }
 
-    private void analyzeLUTColors(String partName, Image lutImage) {
-        PixelReader reader = lutImage.getPixelReader();
-        Map<Color, Integer> mapping = new HashMap<>();
+    /**
+     * @return La recoloration de la partie, ou null si elle n'a pas de LUT ou garde sa couleur de base
+     */
+    public synchronized Recolor recolorFor(BodyPart part) {
+        Integer variantColumn = selectedColors.get(part);
+        LUTTable lutTable = lutTables.get(part);
+        if (lutTable == null || variantColumn == null || variantColumn == 0) {
+            return null;
+        }
+        return new Recolor(lutTable, variantColumn);
+    }
 
+    private void analyzeLUTColors(BodyPart part, Image lutImage) {
+        int[] pixels = LUTRecolorEngine.readPixels(lutImage);
+        int width = (int) lutImage.getWidth();
         int height = (int) lutImage.getHeight();
 
-        System.out.println("=== Analyse LUT pour " + partName + " ===");
-        System.out.println("Taille: " + (int)lutImage.getWidth() + "x" + height);
+        List<Integer> colors = new ArrayList<>();
+        List<Integer> rows = new ArrayList<>();
+
+        System.out.println("=== Analyse LUT pour " + part + " ===");
+        System.out.println("Taille: " + width + "x" + height);
 
         // Analyser TOUTES les lignes de la colonne 0 (couleurs template)
         for (int y = 0; y < height; y++) {
-            Color templateColor = reader.getColor(0, y); // COLONNE 0 seulement
-
-            if (templateColor.getOpacity() > 0 &&
-                    (templateColor.getRed() > 0.01 || templateColor.getGreen() > 0.01 || templateColor.getBlue() > 0.01)) {
-
-                mapping.put(templateColor, y); // Associer couleur -> LIGNE
+            int templateColor = pixels[y * width]; // COLONNE 0 seulement
+            int r = (templateColor >> 16) & 0xFF;
+            int g = (templateColor >> 8) & 0xFF;
+            int b = templateColor & 0xFF;
+
+            // Opaque et pas noir (> 0.01 en composantes normalisées)
+            if ((templateColor >>> 24) != 0 && (r > 2 || g > 2 || b > 2)) {
+                colors.add(templateColor & 0xFFFFFF);
+                rows.add(y); // Associer couleur -> LIGNE
                 System.out.println("Couleur template détectée à la ligne " + y +
-                        ": R=" + String.format("%.3f", templateColor.getRed()) +
-                        ", G=" + String.format("%.3f", templateColor.getGreen()) +
-                        ", B=" + String.format("%.3f", templateColor.getBlue()));
+                        ": R=" + String.format("%.3f", r / 255.0) +
+                        ", G=" + String.format("%.3f", g / 255.0) +
+                        ", B=" + String.format("%.3f", b / 255.0));
             }
         }
 
-        colorMappings.put(partName, mapping);
-        System.out.println("Total: " + mapping.size() + " couleurs template détectées");
+        int[] templateColors = colors.stream().mapToInt(Integer::intValue).toArray();
+        int[] templateRows = rows.stream().mapToInt(Integer::intValue).toArray();
+        // Index précalculé couleur -> ligne, la tolérance de compression PNG est incluse
+        TemplateColorIndex templateIndex = TemplateColorIndex.build(templateColors, LUTTable.CHANNEL_TOLERANCE);
+        lutTables.put(part, new LUTTable(width, height, pixels, templateRows, templateIndex));
+        System.out.println("Total: " + templateColors.length + " couleurs template détectées");
         System.out.println("===============================");
     }
 
     /**
      * Obtient le nombre de variantes disponibles (pour compatibilité)
      */
-    public int getColorCount(String partName) {
+    public synchronized int getColorCount(String partName) {
         return getAvailableVariantIndices(partName).size();
     }
 
     /**
-     * Compare deux couleurs avec une petite tolerance pour les différences de compression
+     * Définit la couleur sélectionnée pour une partie
      */
-    private boolean colorsMatch(Color c1, Color c2) {
-        double tolerance = 0.01; // Tolérance pour les différences de compression PNG
+    public synchronized void setSelectedColor(String partName, int colorIndex) {
+        BodyPart part = BodyPart.fromId(partName);
+        if (part == null) {
+            return;
+        }
 
-        return Math.abs(c1.getRed() - c2.getRed()) < tolerance &&
-                Math.abs(c1.getGreen() - c2.getGreen()) < tolerance &&
-                Math.abs(c1.getBlue() - c2.getBlue()) < tolerance;
+        Integer previous = selectedColors.put(part, colorIndex);
+        if (previous == null || previous != colorIndex) {
+            // Les sprites indexés restent valides, seule la palette change
+            stateVersion++;
+        }
     }
 
     /**
-     * Définit la couleur sélectionnée pour une partie
+     * Vérifie si une partie a une LUT chargée
      */
-    public void setSelectedColor(String partName, int colorIndex) {
-        selectedColors.put(partName, colorIndex);
+    public synchronized boolean hasLUT(String partName) {
+        BodyPart part = BodyPart.fromId(partName);
+        return part != null && loadedLUTs.containsKey(part);
     }
 
     /**
-     * Vérifie si une partie a une LUT chargée
+     * Supprime la LUT d'une partie
      */
-    public boolean hasLUT(String partName) {
-        return loadedLUTs.containsKey(partName);
+    public synchronized void removeLUT(String partName) {
+        BodyPart part = BodyPart.fromId(partName);
+        if (part == null) {
+            return;
+        }
+
+        loadedLUTs.remove(part);
+        selectedColors.remove(part);
+        lutTables.remove(part);
+        stateVersion++;
     }
 
     /**
-     * Supprime la LUT d'une partie
+     * Version de l'état des LUT, change dès qu'une partie change de LUT ou de variante
      */
-    public void removeLUT(String partName) {
-        loadedLUTs.remove(partName);
-        selectedColors.remove(partName);
+    public synchronized long getStateVersion() {
+        return stateVersion;
     }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.nilecramm.fomtools;
+
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+
+/**
+ * Recoloration des sprites en ARGB entier : une lecture et une écriture en bloc par image,
+ * sans allocation par pixel
+ */
+public final class LUTRecolorEngine {
+
+    private LUTRecolorEngine() {
+    }
+
+    /**
+     * Lit tous les pixels d'une image dans un tableau ARGB non prémultiplié
+     */
+    static int[] readPixels(Image image) {
+        int width = (int) image.getWidth();
+        int height = (int) image.getHeight();
+        int[] pixels = new int[width * height];
+        image.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return pixels;
+    }
+
+    /**
+     * Applique une variante de la LUT à un sprite
+     * @param sprite Le sprite d'origine
+     * @param lut La LUT analysée
+     * @param variantColumn Colonne de la variante à appliquer
+     * @return Une nouvelle image recolorée
+     */
+    public static Image recolor(Image sprite, LUTTable lut, int variantColumn) {
+        int width = (int) sprite.getWidth();
+        int height = (int) sprite.getHeight();
+        int[] pixels = readPixels(sprite);
+
+        for (int i = 0; i < pixels.length; i++) {
+            int argb = pixels[i];
+
+            // Les pixels transparents sont recopiés tels quels
+            if ((argb >>> 24) != 0) {
+                int templateRow = lut.findTemplateRow(argb);
+                if (templateRow >= 0) {
+                    // Même ligne, colonne de la variante sélectionnée
+                    pixels[i] = lut.getColor(variantColumn, templateRow);
+                }
+            }
+        }
+
+        WritableImage result = new WritableImage(width, height);
+        result.getPixelWriter().setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return result;
+    }
+}
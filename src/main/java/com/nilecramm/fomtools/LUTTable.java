@@ -0,0 +1,82 @@
+package com.nilecramm.fomtools;
+
+/**
+ * Pixels d'une LUT lus une seule fois en ARGB entier, avec ses couleurs template (colonne 0)
+ */
+public class LUTTable {
+    // Tolérance de 0.01 sur des composantes 8 bits : |a - b| / 255 < 0.01 <=> |a - b| <= 2
+    static final int CHANNEL_TOLERANCE = 2;
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    // Ligne LUT de chaque couleur template et index couleur -> template, tolérance incluse
+    private final int[] templateRows;
+    private final TemplateColorIndex templateIndex;
+
+    // Palettes déjà calculées, par colonne de variante
+    private final int[][] palettes;
+
+    public LUTTable(int width, int height, int[] pixels, int[] templateRows, TemplateColorIndex templateIndex) {
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+        this.templateRows = templateRows;
+        this.templateIndex = templateIndex;
+        this.palettes = new int[width][];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Couleur ARGB de la LUT à une colonne (variante) et une ligne données
+     */
+    public int getColor(int column, int row) {
+        return pixels[row * width + column];
+    }
+
+    public int getTemplateCount() {
+        return templateRows.length;
+    }
+
+    /**
+     * Trouve la couleur template correspondant à une couleur du sprite
+     * @param argb Couleur ARGB du pixel
+     * @return Le numéro de la couleur template, ou -1 si aucune ne correspond
+     */
+    public int findTemplate(int argb) {
+        return templateIndex.get(argb & 0xFFFFFF);
+    }
+
+    /**
+     * Palette d'une variante : la couleur de la colonne pour chaque couleur template
+     */
+    public synchronized int[] getPalette(int column) {
+        int[] palette = palettes[column];
+        if (palette == null) {
+            palette = new int[templateRows.length];
+            for (int i = 0; i < templateRows.length; i++) {
+                palette[i] = getColor(column, templateRows[i]);
+            }
+            palettes[column] = palette;
+        }
+        return palette;
+    }
+
+    /**
+     * Trouve la ligne LUT correspondant à une couleur du sprite
+     * @param argb Couleur ARGB du pixel
+     * @return La ligne, ou -1 si aucune couleur template ne correspond
+     */
+    public int findTemplateRow(int argb) {
+        int template = findTemplate(argb);
+        return template >= 0 ? templateRows[template] : -1;
+    }
+}
@@ -0,0 +1,106 @@
+package com.nilecramm.fomtools;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Chargement complet de par_output.json en parallèle : les sections de parties du corps
+ * sont indépendantes, leurs limites sont relevées en un passage puis chacune est décodée
+ * sur le pool fork-join
+ */
+public class ParallelJsonLoader {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Une section de partie : la partie et la plage d'octets de son objet
+     */
+    private record Section(BodyPart part, int start, int end) { }
+
+    /**
+     * Actions décodées d'une section, dans l'ordre du fichier
+     */
+    private record SectionActions(List<String> names, List<ActionWrapper> actions) { }
+
+    /**
+     * Décode toutes les sections en parallèle et range les actions de chaque partie par identifiant
+     */
+    public JsonData load(File source) throws IOException {
+        byte[] content = Files.readAllBytes(source.toPath());
+        List<Section> sections = findSections(content);
+
+        List<ForkJoinTask<SectionActions>> tasks = new ArrayList<>();
+        for (Section section : sections) {
+            tasks.add(ForkJoinPool.commonPool().submit(() -> decodeSection(content, section)));
+        }
+
+        // Identifiants attribués ici, dans l'ordre du fichier, quel que soit l'ordre de fin des tâches
+        JsonData jsonData = new JsonData();
+        for (int i = 0; i < sections.size(); i++) {
+            SectionActions decoded;
+            try {
+                decoded = tasks.get(i).join();
+            } catch (RuntimeException e) {
+                throw new IOException("Erreur de lecture de la section " + sections.get(i).part(), e);
+            }
+            jsonData.setActions(sections.get(i).part(), decoded.names(), decoded.actions());
+        }
+        return jsonData;
+    }
+
+    /**
+     * Décode les actions d'une section une par une, sans passer par une map intermédiaire
+     */
+    private SectionActions decodeSection(byte[] content, Section section) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<ActionWrapper> actions = new ArrayList<>();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(content, section.start(),
+                section.end() - section.start())) {
+            parser.nextToken(); // START_OBJECT de la partie
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                names.add(parser.getCurrentName());
+                JsonToken token = parser.nextToken();
+                actions.add(token == JsonToken.VALUE_NULL ? null : objectMapper.readValue(parser, ActionWrapper.class));
+            }
+        }
+        return new SectionActions(names, actions);
+    }
+
+    /**
+     * Relève la plage d'octets de chaque section de partie, sans décoder leur contenu
+     */
+    private List<Section> findSections(byte[] content) throws IOException {
+        List<Section> sections = new ArrayList<>();
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(content)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Format inattendu pour par_output.json");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                BodyPart part = BodyPart.fromId(parser.getCurrentName());
+                JsonToken token = parser.nextToken();
+
+                if (part == null || token != JsonToken.START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+
+                int start = (int) parser.getTokenLocation().getByteOffset();
+                parser.skipChildren();
+                int end = (int) parser.getCurrentLocation().getByteOffset();
+                sections.add(new Section(part, start, end));
+            }
+        }
+        return sections;
+    }
+}
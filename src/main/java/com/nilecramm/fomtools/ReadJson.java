@@ -1,10 +1,37 @@
 package com.nilecramm.fomtools;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ReadJson {
+    /**
+     * Façon de lire le JSON quand l'index binaire est absent ou périmé
+     */
+    public enum LoadMode {
+        // Un passage en streaming, chaque action est décodée à la demande
+        LAZY,
+        // Toutes les sections de parties décodées en parallèle
+        PARALLEL
+    }
+
+    // Une seule compilation d'index à la fois, même si le fichier est relu plusieurs fois de suite
+    private static final ExecutorService INDEX_COMPILER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "animation-index-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LoadMode loadMode;
+
+    public ReadJson() {
+        this(LoadMode.LAZY);
+    }
+
+    public ReadJson(LoadMode loadMode) {
+        this.loadMode = loadMode;
+    }
     /*
     public static void main(String[] args) {
         ObjectMapper objectMapper = new ObjectMapper();
@@ -28,10 +55,37 @@ public class ReadJson {
     }*/
 
     public JsonData readJson(String fileName) {
-        ObjectMapper objectMapper = new ObjectMapper();
+        File source = new File(fileName);
+        File indexFile = AnimationIndex.indexFileFor(source);
+
+        // Index binaire à jour : projection mémoire, les actions sont décodées à la demande
+        JsonData indexed = AnimationIndex.load(indexFile, source);
+        if (indexed != null) {
+            return indexed;
+        }
+
+        // Taille et date relevées avant la lecture : l'index portera celles de la version effectivement lue
+        long sourceLength = source.length();
+        long sourceLastModified = source.lastModified();
+
         try {
-            // Lire le fichier JSON et le mapper à l'objet Java
-            JsonData jsonData = objectMapper.readValue(new File(fileName), JsonData.class);
+            JsonData jsonData;
+            if (loadMode == LoadMode.PARALLEL) {
+                jsonData = new ParallelJsonLoader().load(source);
+            } else {
+                // Un seul passage en streaming, chaque action sera décodée quand on la demandera
+                jsonData = new StreamingJsonLoader().load(source);
+            }
+
+            // Compiler l'index pour les prochains lancements, sans retarder l'affichage
+            INDEX_COMPILER.execute(() -> {
+                try {
+                    AnimationIndex.compile(jsonData, source, sourceLength, sourceLastModified, indexFile);
+                } catch (Exception e) {
+                    System.err.println("Impossible d'écrire l'index d'animations: " + e.getMessage());
+                }
+            });
+
             return jsonData;
         } catch (IOException e) {
             e.printStackTrace();
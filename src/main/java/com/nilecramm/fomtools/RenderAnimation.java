@@ -1,17 +1,30 @@
 package com.nilecramm.fomtools;
 
-import javafx.animation.KeyFrame;
-import javafx.animation.Timeline;
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.scene.Group;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.Pane;
-import javafx.scene.layout.Region;
-import javafx.util.Duration;
-
-import java.lang.reflect.Field;
-import java.util.HashMap;
+import javafx.scene.transform.Scale;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class RenderAnimation {
     private final LUTManager lutManager = new LUTManager();
@@ -20,7 +33,7 @@ public class RenderAnimation {
         return lutManager;
     }
 
-    private final Map<String, Integer> currentFrameMap = new HashMap<>();
+    private final Map<BodyPart, Integer> currentFrameMap = new EnumMap<>(BodyPart.class);
 
     public interface FrameUpdateListener {
         void onFrameUpdate(String partName, int frameIndex);
@@ -36,55 +49,76 @@ public class RenderAnimation {
     private double speed = 1.0;
 
     // Loader pour les sprites
-    private final SpriteLoader spriteLoader = new SpriteLoader();
+    private SpriteLoader spriteLoader = new SpriteLoader();
+
+    // Cache des sprites décodés, partagé avec les aperçus
+    private final SpriteCache spriteCache;
 
-    // Reference to the JsonData containing all animations
-    private final JsonData jsonData;
+    // Reference to the JsonData containing all animations (remplacée quand par_output.json est rechargé)
+    private JsonData jsonData;
 
     // Container for all sprite parts
     private final Pane spriteContainer;
 
+    // Calque des parties, agrandi par une transformation plutôt qu'en redécodant les sprites
+    private final Group partLayer = new Group();
+    private final Scale layerScale = new Scale(1.0, 1.0, 0, 0);
+
     // Current animation state
     private String currentAction = "idle"; // Default action
+    private int currentActionId = -1; // Identifiant de l'action dans l'ActionTable
     private String currentDirection = "south"; // Default direction
 
     // ImageViews for each body part
-    private final Map<String, ImageView> bodyParts = new HashMap<>();
-
-    // Current animation timelines for each body part
-    private final Map<String, Timeline> timelines = new HashMap<>();
-
-    // Liste complète des parties du corps
-    private final List<String> allPartNames = List.of(
-            "base_arm_left", "base_arm_right", "base_chest", "base_head", "base_legs",
-            "sleeve_left", "tool", "tool_effect", "sleeve_right", "head_gear",
-            "face_gear", "hair_front", "eyes", "hair_mid", "face", "facial_hair",
-            "waist", "feet", "legs", "torso", "back_gear", "hair_back",
-            "head_gear_back", "base_effect"
-    );
-
-    // Rendering order based on direction
-    private final Map<String, List<String>> renderOrder = Map.of(
-            "south", List.of(
-                    "held_item", "sleeve_left", "base_arm_left", "tool", "tool_effect", "sleeve_right", "base_arm_right",
-                    "head_gear", "face_gear", "hair_front", "eyes", "hair_mid", "face", "facial_hair", "base_head",
-                    "waist", "feet", "legs", "base_legs", "torso", "base_chest", "back_gear", "hair_back",
-                    "head_gear_back", "base_effect"
-            ),
-            "east", List.of(
-                    "sleeve_left", "base_arm_left", "held_item", "tool", "tool_effect", "head_gear", "face_gear",
-                    "hair_front", "eyes", "hair_mid", "face", "facial_hair", "base_head", "waist", "feet", "legs",
-                    "base_legs", "torso", "base_chest", "sleeve_right", "base_arm_right", "hair_back", "back_gear",
-                    "head_gear_back", "base_effect"
-            ),
-            "north", List.of(
-                    "head_gear", "hair_back", "back_gear", "sleeve_left", "base_arm_left", "sleeve_right", "base_arm_right",
-                    "hair_front", "hair_mid", "face_gear", "eyes", "face", "facial_hair", "base_head", "head_gear_back",
-                    "waist", "feet", "legs", "base_legs", "torso", "base_chest", "held_item", "tool", "tool_effect",
-                    "base_effect"
-            )
-    );
+    private final Map<BodyPart, ImageView> bodyParts = new EnumMap<>(BodyPart.class);
+
+    // Current animation schedules for each body part
+    private final Map<BodyPart, FrameSchedule> schedules = new EnumMap<>(BodyPart.class);
 
+    // Horloge unique qui fait avancer toutes les parties en même temps
+    private final AnimationTimer clock = new AnimationTimer() {
+        @Override
+        public void handle(long now) {
+            onPulse(now);
+        }
+    };
+
+    // Temps d'animation écoulé (secondes à vitesse normale) et dernier pulse reçu
+    private double elapsed = 0;
+    private long lastPulse = -1;
+
+    // Animations aplaties, calculées en arrière-plan puis affichées dans une seule ImageView
+    private final CompositeCache compositeCache = new CompositeCache();
+    private final ExecutorService compositeExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "character-compositor");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ImageView compositeView = new ImageView();
+    private CompositeAnimation activeComposite;
+    private CompositeCache.Key activeCompositeKey;
+    private int compositeDisplayedIndex = -1;
+    // Lu par le thread de l'aplatissement pour abandonner un calcul dépassé
+    private volatile long compositeGeneration = 0;
+    // Incrémenté à chaque sprite ou piste modifié sur le disque : un calcul lancé avant ne doit pas aller en cache
+    private volatile long sourceVersion = 0;
+
+    // Tout décodage et toute recoloration passent par ici, le thread JavaFX ne reçoit que des images prêtes
+    private final DecodeScheduler decodeScheduler;
+    // Sprite en cours de décodage pour chaque vue ; la vue garde l'image précédente en attendant
+    private final Map<BodyPart, CompletableFuture<Image>> pendingSprites = new EnumMap<>(BodyPart.class);
+
+    // Préparation des frames avant lecture
+    private FrameWarmup activeWarmup;
+    // 1 quand aucune préparation n'est en cours
+    private final ReadOnlyDoubleWrapper warmupProgress = new ReadOnlyDoubleWrapper(1.0);
+
+    // Décodage à l'avance des directions et actions voisines de l'animation affichée
+    private final SpritePrefetcher prefetcher;
+
+    // Dossier du personnage actuellement chargé, surveillé pour suivre les sprites modifiés
+    private String currentCharacterPath;
+    private CharacterFolderWatcher folderWatcher;
 
     /**
      * Create a new animation renderer
@@ -92,29 +126,46 @@ public class RenderAnimation {
      * @param container The pane to render the animation in
      */
     public RenderAnimation(JsonData jsonData, Pane container) {
+        this(jsonData, container, new SpriteCache());
+    }
+
+    /**
+     * @param spriteCache Cache de sprites à réutiliser (ex: déjà rempli au démarrage)
+     */
+    public RenderAnimation(JsonData jsonData, Pane container, SpriteCache spriteCache) {
         this.jsonData = jsonData;
         this.spriteContainer = container;
+        this.spriteCache = spriteCache;
+        this.decodeScheduler = new DecodeScheduler(spriteCache, lutManager);
+        this.prefetcher = new SpritePrefetcher(spriteCache, decodeScheduler);
 
-        // Initialize all body parts
-        for (String part : allPartNames) {
+        // Initialize all body parts, at native size without smoothing (nearest neighbour when scaled)
+        for (BodyPart part : BodyPart.all()) {
             ImageView imageView = new ImageView();
-            imageView.setPreserveRatio(true);
+            imageView.setPreserveRatio(false);
+            imageView.setSmooth(false);
             bodyParts.put(part, imageView);
-            spriteContainer.getChildren().add(imageView);
+            partLayer.getChildren().add(imageView);
         }
+
+        compositeView.setSmooth(false);
+        compositeView.setVisible(false);
+        partLayer.getChildren().add(compositeView);
+
+        partLayer.getTransforms().add(layerScale);
+        spriteContainer.getChildren().add(partLayer);
     }
 
     public void togglePause() {
         isPaused = !isPaused;
 
-        for (Timeline timeline : timelines.values()) {
-            if (timeline != null) {
-                if (isPaused) {
-                    timeline.pause();
-                } else {
-                    timeline.play();
-                }
-            }
+        if (isPaused) {
+            clock.stop();
+        } else if (activeWarmup == null) {
+            // Reprendre sans compter le temps passé en pause
+            // (pendant une préparation, la lecture démarrera une fois les frames prêtes)
+            lastPulse = -1;
+            clock.start();
         }
     }
 
@@ -127,6 +178,25 @@ public class RenderAnimation {
         return this.spriteLoader;
     }
 
+    public SpriteCache getSpriteCache() {
+        return this.spriteCache;
+    }
+
+    public CompositeCache getCompositeCache() {
+        return this.compositeCache;
+    }
+
+    public DecodeScheduler getDecodeScheduler() {
+        return this.decodeScheduler;
+    }
+
+    /**
+     * Avancement de la préparation des frames de l'animation choisie (1 quand elle est prête)
+     */
+    public ReadOnlyDoubleProperty warmupProgressProperty() {
+        return warmupProgress.getReadOnlyProperty();
+    }
+
     /**
      * Charge les sprites d'un personnage spécifique
      * @param characterPath Chemin vers le dossier du personnage
@@ -134,48 +204,239 @@ public class RenderAnimation {
      */
     public boolean loadCharacter(String characterPath) {
         spriteLoader.loadCharacterSprites(characterPath);
+        return useCharacter(characterPath);
+    }
+
+    /**
+     * Utilise les sprites d'un personnage déjà parcourus (ex: en arrière-plan au démarrage)
+     * @param characterPath Chemin vers le dossier du personnage
+     * @param scannedLoader Loader dont loadCharacterSprites a déjà été appelé sur ce dossier
+     * @return true si le chargement a réussi
+     */
+    public boolean loadCharacter(String characterPath, SpriteLoader scannedLoader) {
+        spriteLoader = scannedLoader;
+        return useCharacter(characterPath);
+    }
+
+    private boolean useCharacter(String characterPath) {
+        currentCharacterPath = characterPath;
+        watchCharacter(characterPath);
+
+        // Les sprites ont pu être modifiés, les animations aplaties de ce personnage sont périmées
+        compositeCache.invalidateCharacter(characterPath);
 
         // Vérifier que les sprites de base nécessaires ont été trouvés
         boolean hasBasicSprites = spriteLoader.hasBasicSprites();
 
         // If loading was successful and we have an action, restart the animation
+        // (setAnimation keeps the pause state)
         if (hasBasicSprites && currentAction != null && !currentAction.isEmpty()) {
-            // Store pause state
-            boolean wasPaused = isPaused;
+            setAnimation(currentAction, currentDirection);
+        }
 
-            // Ensure we're not paused before setting animation
-            isPaused = false;
+        return hasBasicSprites;
+    }
 
-            // Set the animation
-            setAnimation(currentAction, currentDirection);
+    /**
+     * Surveille le dossier du personnage pour afficher les sprites modifiés sans tout recharger
+     */
+    private void watchCharacter(String characterPath) {
+        if (folderWatcher != null) {
+            folderWatcher.close();
+            folderWatcher = null;
+        }
 
-            // Restore pause state explicitly if needed
-            if (wasPaused) {
-                isPaused = true;
-                for (Timeline timeline : timelines.values()) {
-                    if (timeline != null) {
-                        timeline.pause();
+        CharacterFolderWatcher[] watcher = new CharacterFolderWatcher[1];
+        CharacterFolderWatcher.Listener listener = new CharacterFolderWatcher.Listener() {
+            @Override
+            public void onSpritesChanged(Set<Path> updated, Set<Path> removed) {
+                Platform.runLater(() -> {
+                    // Ignorer les événements d'un personnage qui n'est plus affiché
+                    if (folderWatcher == watcher[0]) {
+                        applySpriteChanges(updated, removed);
                     }
-                }
+                });
+            }
+
+            @Override
+            public void onOverflow() {
+                // Événements perdus : reparcourir le dossier ici, hors du thread JavaFX
+                SpriteLoader rescanned = new SpriteLoader();
+                rescanned.loadCharacterSprites(characterPath);
+                Platform.runLater(() -> {
+                    if (folderWatcher == watcher[0]) {
+                        spriteLoader = rescanned;
+                        spriteCache.clear();
+                        refreshParts(EnumSet.allOf(BodyPart.class));
+                    }
+                });
             }
+        };
+
+        try {
+            watcher[0] = new CharacterFolderWatcher(Paths.get(characterPath), listener);
+            folderWatcher = watcher[0];
+        } catch (IOException e) {
+            System.err.println("Impossible de surveiller le dossier " + characterPath + ": " + e.getMessage());
         }
+    }
 
-        return hasBasicSprites;
+    /**
+     * Met à jour l'index et les caches pour les seuls fichiers modifiés, puis réaffiche
+     * les parties concernées sans relancer l'animation
+     */
+    private void applySpriteChanges(Set<Path> updated, Set<Path> removed) {
+        Set<BodyPart> affected = EnumSet.noneOf(BodyPart.class);
+
+        for (Path path : removed) {
+            for (Map.Entry<String, BodyPart> entry : spriteLoader.removeSprites(path).entrySet()) {
+                spriteCache.invalidate(entry.getKey());
+                affected.add(entry.getValue());
+            }
+        }
+
+        for (Path file : updated) {
+            BodyPart part = spriteLoader.putSprite(file);
+            if (part != null) {
+                // Les versions recolorées sont liées à l'image décodée et partent avec elle
+                spriteCache.invalidate(SpriteLoader.toUrl(file));
+                affected.add(part);
+            }
+        }
+
+        if (!affected.isEmpty()) {
+            System.out.println("Sprites modifiés pour : " + affected);
+            refreshParts(affected);
+        }
+    }
+
+    /**
+     * Réaffiche des parties au temps actuel, en démarrant celles qui viennent d'avoir des sprites
+     */
+    private void refreshParts(Set<BodyPart> parts) {
+        if (currentCharacterPath == null || currentActionId < 0) {
+            return;
+        }
+
+        sourceVersion++;
+        compositeCache.invalidateCharacter(currentCharacterPath);
+        deactivateComposite();
+
+        boolean started = false;
+        for (BodyPart part : parts) {
+            FrameSchedule schedule = schedules.get(part);
+            if (schedule != null) {
+                schedule.setDisplayedIndex(-1);
+            } else if (spriteLoader.hasSpritesForPart(part)) {
+                startAnimation(part);
+                started |= schedules.containsKey(part);
+            }
+        }
+        if (started) {
+            applyRenderOrder();
+        }
+
+        renderFramesAt(elapsed);
+        requestComposite();
+    }
+
+    /**
+     * Passe à une nouvelle version des données d'animation sans relancer la lecture :
+     * seules les parties dont la piste en cours a changé reçoivent un nouveau planning
+     * @param fresh Les données relues
+     * @param diff Les différences avec les données actuelles
+     */
+    public void replaceAnimationData(JsonData fresh, AnimationDiff diff) {
+        jsonData = fresh;
+        currentActionId = fresh.getActionTable().idOf(currentAction);
+        // Le préchargement en cours lit encore l'ancienne version
+        prefetcher.cancel();
+
+        for (AnimationDiff.Change change : diff.getChanges()) {
+            compositeCache.invalidateAnimation(change.action(), change.direction());
+        }
+
+        if (currentCharacterPath == null) {
+            return;
+        }
+
+        if (activeWarmup != null) {
+            // Préparation commencée sur les anciennes pistes, la lecture n'a pas démarré : tout relancer
+            setAnimation(currentAction, currentDirection);
+            return;
+        }
+
+        boolean rebuilt = false;
+        for (BodyPart part : BodyPart.all()) {
+            // Une action choisie pendant la relecture n'a pas pu être lue dans les anciennes données
+            boolean missed = false;
+            if (!schedules.containsKey(part) && spriteLoader.hasSpritesForPart(part)) {
+                ActionWrapper action = fresh.getAction(part, currentActionId);
+                FrameTrack frames = action != null ? framesFor(action, currentDirection) : null;
+                missed = frames != null && frames.size() > 0;
+            }
+            if (!missed && !diff.isChanged(part, currentAction, currentDirection)) {
+                continue;
+            }
+
+            rebuilt = true;
+            schedules.remove(part);
+            bodyParts.get(part).setImage(null);
+            if (spriteLoader.hasSpritesForPart(part)) {
+                startAnimation(part);
+            }
+        }
+        if (rebuilt) {
+            // Reprendre au même instant avec les nouvelles pistes
+            sourceVersion++;
+            deactivateComposite();
+            applyRenderOrder();
+            renderFramesAt(elapsed);
+            requestComposite();
+        }
+
+        if (currentActionId >= 0) {
+            prefetcher.prefetch(jsonData, spriteLoader, currentActionId, currentDirection);
+        }
+    }
+
+    public JsonData getJsonData() {
+        return jsonData;
     }
 
     /**
      * Force render the current frame (useful when paused)
      */
     public void renderCurrentFrame() {
-        // Only process for parts that have a current timeline
-        for (String partName : timelines.keySet()) {
-            String imagePath = spriteLoader.getSpritePath(partName,
-                    currentFrameMap.getOrDefault(partName, 1));
-            if (imagePath != null && bodyParts.containsKey(partName)) {
-                ImageView view = bodyParts.get(partName);
-                view.setImage(new Image(imagePath));
+        if (activeComposite != null) {
+            if (activeCompositeKey.lutVersion() == lutManager.getStateVersion()) {
+                return;
+            }
+
+            // L'animation aplatie ne correspond plus à la LUT : revenir aux parties le temps de la recalculer
+            deactivateComposite();
+            renderFramesAt(elapsed);
+        } else {
+            // Only process for parts that have a current schedule
+            for (Map.Entry<BodyPart, FrameSchedule> entry : schedules.entrySet()) {
+                BodyPart part = entry.getKey();
+                FrameSchedule schedule = entry.getValue();
+                FrameTrack track = schedule.getTrack();
+
+                // Les décalages viennent de la piste : ceux de la vue peuvent être ceux d'une frame
+                // précédente si la frame affichée attendait encore son décodage
+                int index = schedule.getDisplayedIndex();
+                if (index < 0) {
+                    index = schedule.indexAt(elapsed);
+                }
+                String imagePath = spriteLoader.getSpritePath(part, track.targetFrame(index));
+                if (imagePath != null) {
+                    showSprite(part, imagePath, track.offsetX(index), track.offsetY(index));
+                }
             }
         }
+
+        requestComposite();
     }
 
     /**
@@ -183,12 +444,8 @@ public class RenderAnimation {
      * @param speed The speed factor (1.0 = normal speed)
      */
     public void setSpeed(double speed) {
+        // Appliquée en direct par l'horloge, l'animation continue là où elle en est
         this.speed = speed;
-
-        // Restart animations with new speed
-        if (currentAction != null && !currentAction.isEmpty()) {
-            setAnimation(currentAction, currentDirection);
-        }
     }
 
     /**
@@ -201,18 +458,249 @@ public class RenderAnimation {
         stopAllAnimations();
 
         this.currentAction = action;
+        this.currentActionId = jsonData.getActionTable().idOf(action);
         this.currentDirection = direction;
 
         // Start the new animation for all body parts
         startAnimations();
+        elapsed = 0;
+        lastPulse = -1;
+
+        // Décoder d'abord en parallèle les frames qui ne sont pas encore prêtes
+        List<FrameWarmup.Job> pending = new ArrayList<>();
+        for (FrameWarmup.Job job : FrameWarmup.collectJobs(schedules, spriteLoader)) {
+            if (!decodeScheduler.isPrepared(job.part(), job.imagePath())) {
+                pending.add(job);
+            }
+        }
 
-        // If the animation was paused, make sure it stays paused
-        if (isPaused) {
-            for (Timeline timeline : timelines.values()) {
-                if (timeline != null) {
-                    timeline.pause();
+        if (pending.isEmpty()) {
+            startPlayback();
+        } else {
+            warmUp(new FrameWarmup(pending));
+        }
+    }
+
+    /**
+     * Prépare les frames en arrière-plan, l'horloge reste arrêtée jusqu'à la fin
+     */
+    private void warmUp(FrameWarmup warmup) {
+        activeWarmup = warmup;
+        warmupProgress.set(0);
+
+        warmup.start(decodeScheduler, progress -> Platform.runLater(() -> {
+            if (activeWarmup == warmup) {
+                warmupProgress.set(progress);
+            }
+        })).whenComplete((ignored, error) -> Platform.runLater(() -> {
+            // Ignorer une préparation remplacée par un autre changement d'animation
+            if (activeWarmup != warmup) {
+                return;
+            }
+            activeWarmup = null;
+            warmupProgress.set(1.0);
+            startPlayback();
+        }));
+    }
+
+    /**
+     * Annule la préparation en cours, s'il y en a une
+     */
+    private void cancelWarmup() {
+        if (activeWarmup != null) {
+            activeWarmup.cancel();
+            activeWarmup = null;
+            warmupProgress.set(1.0);
+        }
+    }
+
+    /**
+     * Affiche la première frame puis laisse l'horloge avancer
+     * (si l'animation était en pause, elle y reste)
+     */
+    private void startPlayback() {
+        renderFramesAt(elapsed);
+        if (!isPaused) {
+            clock.start();
+        }
+
+        // Aplatir le personnage en arrière-plan, la lecture basculera dessus une fois prêt
+        requestComposite();
+
+        // Puis préparer ce que l'utilisateur risque de choisir ensuite
+        if (currentActionId >= 0) {
+            prefetcher.prefetch(jsonData, spriteLoader, currentActionId, currentDirection);
+        }
+    }
+
+    /**
+     * Pulse de l'horloge : avance le temps écoulé et met à jour les parties dont la frame a changé
+     */
+    private void onPulse(long now) {
+        if (lastPulse >= 0) {
+            elapsed += (now - lastPulse) / 1_000_000_000.0 * speed;
+        }
+        lastPulse = now;
+        renderFramesAt(elapsed);
+    }
+
+    /**
+     * Affiche pour chaque partie la frame active à un instant donné
+     */
+    private void renderFramesAt(double time) {
+        // Avec une animation aplatie, les parties ne servent plus qu'au suivi des frames
+        boolean composite = activeComposite != null;
+
+        for (Map.Entry<BodyPart, FrameSchedule> entry : schedules.entrySet()) {
+            FrameSchedule schedule = entry.getValue();
+            int index = schedule.indexAt(time);
+            if (index != schedule.getDisplayedIndex()) {
+                schedule.setDisplayedIndex(index);
+                applyFrame(entry.getKey(), schedule.getTrack(), index, !composite);
+            }
+        }
+
+        if (composite) {
+            int index = activeComposite.indexAt(time);
+            if (index != compositeDisplayedIndex) {
+                compositeDisplayedIndex = index;
+                compositeView.setImage(activeComposite.getImage(index));
+            }
+        }
+    }
+
+    /**
+     * Lance le calcul de l'animation aplatie pour l'état actuel, ou l'affiche directement si elle est en cache
+     */
+    private void requestComposite() {
+        if (currentCharacterPath == null || schedules.isEmpty()) {
+            return;
+        }
+
+        CompositeCache.Key key = new CompositeCache.Key(currentCharacterPath, currentAction, currentDirection,
+                lutManager.getStateVersion());
+        CompositeAnimation cached = compositeCache.get(key);
+        if (cached != null) {
+            activateComposite(key, cached);
+            return;
+        }
+
+        // Les chemins des sprites sont résolus ici, le thread de fond ne touche qu'aux caches
+        List<CharacterCompositor.PartTrack> tracks = buildCompositeTracks();
+        long generation = ++compositeGeneration;
+        long sources = sourceVersion;
+
+        compositeExecutor.submit(() -> {
+            // Demander tous les sprites d'un coup pour qu'ils soient décodés en parallèle,
+            // après tout ce qui doit être affiché
+            Map<String, CompletableFuture<Image>> decodes = new HashMap<>();
+            for (CharacterCompositor.PartTrack track : tracks) {
+                for (String path : track.getImagePaths()) {
+                    if (path != null) {
+                        decodes.computeIfAbsent(path, p ->
+                                decodeScheduler.decode(track.getPart(), p, DecodeScheduler.Priority.EXPORT));
+                    }
                 }
             }
+
+            CompositeAnimation composite;
+            try {
+                composite = CharacterCompositor.compose(tracks, (part, path) -> {
+                    if (generation != compositeGeneration) {
+                        throw new CancellationException();
+                    }
+                    return decodes.get(path).join();
+                });
+            } catch (CancellationException e) {
+                // Animation changée pendant le calcul : libérer les décodages pas encore commencés
+                decodes.values().forEach(decode -> decode.cancel(false));
+                return;
+            } catch (Exception e) {
+                e.printStackTrace();
+                return;
+            }
+
+            // Durées de boucle différentes entre parties, ou LUT / sprites modifiés pendant le calcul
+            if (composite == null || lutManager.getStateVersion() != key.lutVersion()
+                    || sourceVersion != sources) {
+                return;
+            }
+            compositeCache.put(key, composite);
+
+            Platform.runLater(() -> {
+                // Ignorer le résultat si l'animation a changé entre-temps
+                if (generation == compositeGeneration) {
+                    activateComposite(key, composite);
+                }
+            });
+        });
+    }
+
+    /**
+     * Parties à aplatir, de l'arrière-plan vers le premier plan
+     */
+    private List<CharacterCompositor.PartTrack> buildCompositeTracks() {
+        List<BodyPart> parts = new ArrayList<>(schedules.keySet());
+
+        // Plus le viewOrder est élevé, plus la partie est derrière ; à égalité, l'ordre des enfants l'emporte
+        parts.sort(Comparator.comparingDouble((BodyPart part) -> -bodyParts.get(part).getViewOrder())
+                .thenComparing(Comparator.naturalOrder()));
+
+        List<CharacterCompositor.PartTrack> tracks = new ArrayList<>();
+        for (BodyPart part : parts) {
+            FrameSchedule schedule = schedules.get(part);
+            String[] imagePaths = new String[schedule.getFrameCount()];
+            for (int i = 0; i < imagePaths.length; i++) {
+                imagePaths[i] = spriteLoader.getSpritePath(part, schedule.getTrack().targetFrame(i));
+            }
+            tracks.add(new CharacterCompositor.PartTrack(part, schedule, imagePaths));
+        }
+        return tracks;
+    }
+
+    /**
+     * Bascule l'affichage sur l'animation aplatie : une seule ImageView au lieu d'une par partie
+     */
+    private void activateComposite(CompositeCache.Key key, CompositeAnimation composite) {
+        activeComposite = composite;
+        activeCompositeKey = key;
+        compositeDisplayedIndex = -1;
+
+        compositeView.setTranslateX(composite.getOriginX());
+        compositeView.setTranslateY(composite.getOriginY());
+        compositeView.setVisible(true);
+
+        cancelPendingSprites();
+        for (ImageView view : bodyParts.values()) {
+            view.setVisible(false);
+            view.setImage(null);
+        }
+
+        renderFramesAt(elapsed);
+    }
+
+    /**
+     * Revient à l'affichage partie par partie
+     */
+    private void deactivateComposite() {
+        compositeGeneration++;
+        if (activeComposite == null) {
+            return;
+        }
+
+        activeComposite = null;
+        activeCompositeKey = null;
+        compositeDisplayedIndex = -1;
+        compositeView.setVisible(false);
+        compositeView.setImage(null);
+
+        for (ImageView view : bodyParts.values()) {
+            view.setVisible(true);
+        }
+
+        // Forcer le réaffichage des parties au prochain rendu
+        for (FrameSchedule schedule : schedules.values()) {
+            schedule.setDisplayedIndex(-1);
         }
     }
 
@@ -221,11 +709,11 @@ public class RenderAnimation {
      */
     private void startAnimations() {
         // Obtenir la liste des parties disponibles pour ce personnage
-        List<String> availableParts = spriteLoader.getAvailableBodyParts();
+        List<BodyPart> availableParts = spriteLoader.getAvailableParts();
 
         // Démarrer l'animation pour chaque partie disponible
-        for (String partName : availableParts) {
-            startAnimation(partName);
+        for (BodyPart part : availableParts) {
+            startAnimation(part);
         }
 
         // Apply proper z-ordering based on current direction
@@ -236,7 +724,7 @@ public class RenderAnimation {
      * Apply the proper render order based on current direction
      */
     private void applyRenderOrder() {
-        List<String> order = renderOrder.getOrDefault(currentDirection, renderOrder.get("south"));
+        BodyPart[] order = BodyPart.renderOrder(currentDirection);
 
         // Reset all view orders first
         for (ImageView view : bodyParts.values()) {
@@ -244,158 +732,147 @@ public class RenderAnimation {
         }
 
         // Apply render order - IMPORTANT: in JavaFX, LOWER viewOrder appears IN FRONT
-        for (int i = 0; i < order.size(); i++) {
-            String part = order.get(i);
-            if (bodyParts.containsKey(part)) {
-                // First items in our list should get HIGHER values (to appear behind)
-                // Last items in our list should get LOWER values (to appear in front)
-                bodyParts.get(part).setViewOrder(i);
-            }
+        for (int i = 0; i < order.length; i++) {
+            // First items in our list should get HIGHER values (to appear behind)
+            // Last items in our list should get LOWER values (to appear in front)
+            bodyParts.get(order[i]).setViewOrder(i);
         }
     }
 
     /**
      * Start animation for a specific body part
-     * @param partName The body part to animate
+     * @param part The body part to animate
      */
-    @SuppressWarnings("unchecked")
-    private void startAnimation(String partName) {
-        Map<String, ActionWrapper> partActions;
-
-        try {
-            // Utiliser la réflexion pour accéder au champ correspondant dans jsonData
-            Field field = jsonData.getClass().getField(partName);
-            partActions = (Map<String, ActionWrapper>) field.get(jsonData);
-
-            if (partActions == null) {
-                System.out.println("Aucune action trouvée pour la partie " + partName);
-                return;
-            }
-        } catch (Exception e) {
-            System.out.println("Erreur d'accès à la partie " + partName + ": " + e.getMessage());
+    private void startAnimation(BodyPart part) {
+        if (!jsonData.hasPart(part)) {
+            System.out.println("Aucune action trouvée pour la partie " + part);
             return;
         }
 
         // Check if action exists
-        if (!partActions.containsKey(currentAction)) {
-            System.out.println("Action " + currentAction + " not found for " + partName);
+        ActionWrapper action = jsonData.getAction(part, currentActionId);
+        if (action == null) {
+            System.out.println("Action " + currentAction + " not found for " + part);
             return;
         }
 
-        ActionWrapper action = partActions.get(currentAction);
-        Frame[] frames;
-
-        // Get frames for current direction
-        switch (currentDirection) {
-            case "north": frames = action.north; break;
-            case "east": frames = action.east; break;
-            case "south": frames = action.south; break;
-            default: frames = action.south; // Default to south
-        }
-
-        if (frames == null || frames.length == 0) {
-            System.out.println("No frames found for " + partName + " in direction " + currentDirection);
+        FrameTrack frames = framesFor(action, currentDirection);
+        if (frames == null || frames.size() == 0) {
+            System.out.println("No frames found for " + part + " in direction " + currentDirection);
             return;
         }
 
-        // Create timeline for animation
-        Timeline timeline = new Timeline();
-        ImageView view = bodyParts.get(partName);
+        // Store the schedule, the clock will display its frames
+        schedules.put(part, new FrameSchedule(frames));
+    }
 
-        // Vérifier que l'ImageView existe
-        if (view == null) {
-            System.out.println("ImageView manquant pour " + partName);
-            return;
+    /**
+     * Frames d'une action pour une direction ("north", "east", "south" par défaut)
+     */
+    static FrameTrack framesFor(ActionWrapper action, String direction) {
+        return action.forDirection(direction);
+    }
+
+    /**
+     * Affiche une frame d'une partie du corps
+     * @param track Les frames de la partie
+     * @param index Indice de la frame dans la piste
+     * @param updateView false quand l'animation aplatie est affichée à la place des parties
+     */
+    private void applyFrame(BodyPart part, FrameTrack track, int index, boolean updateView) {
+        final int frameIndex = track.targetFrame(index);
+        ImageView view = bodyParts.get(part);
+
+        // Mémoriser la frame courante de la partie
+        currentFrameMap.put(part, frameIndex);
+
+        // Utiliser le SpriteLoader pour trouver l'image
+        String imagePath = spriteLoader.getSpritePath(part, frameIndex);
+
+        if (imagePath != null) {
+            if (updateView) {
+                // Apply offset (the layer transform takes care of the scale)
+                showSprite(part, imagePath, track.offsetX(index), track.offsetY(index));
+
+                // Décoder la frame suivante avant qu'elle ne soit demandée
+                String nextPath = spriteLoader.getSpritePath(part, track.targetFrame((index + 1) % track.size()));
+                if (nextPath != null) {
+                    decodeScheduler.decode(part, nextPath, DecodeScheduler.Priority.NEXT_FRAME);
+                }
+            }
+
+            // Original depth is still used for animations that
+            // don't follow the standard render order
+            if (track.depth(index) > 0) {
+                //view.setViewOrder(-frame.depth);
+            }
+            // Notify the listener about the frame update
+            if (frameUpdateListener != null) {
+                frameUpdateListener.onFrameUpdate(part.getId(), frameIndex);
+            }
+        } else if (updateView) {
+            // Si l'image n'est pas trouvée, effacer l'image précédente
+            cancelPendingSprite(part);
+            view.setImage(null);
         }
+    }
 
-        double totalDuration = 0;
-        for (Frame frame : frames) {
-            final int frameIndex = frame.target_frame;
-            final int[] offset = frame.offset.clone(); // Clone to avoid modifying the original
-
-            // Scale the offset based on current scale
-            offset[0] = (int)(offset[0] * scale);
-            offset[1] = (int)(offset[1] * scale);
-
-            double adjustedDuration = frame.duration / speed;
-
-            KeyFrame keyFrame = new KeyFrame(
-                    Duration.seconds(totalDuration),
-                    e -> {
-                        // In the KeyFrame handler inside startAnimation method, add this line:
-                        currentFrameMap.put(partName, frameIndex);
-
-                        // Utiliser le SpriteLoader pour trouver l'image
-                        String imagePath = spriteLoader.getSpritePath(partName, frameIndex);
-
-                        if (imagePath != null) {
-                            // Charger l'image directement à la bonne taille selon le scale actuel
-                            int originalWidth, originalHeight;
-                            if (partName.equals("base_head") || partName.equals("eyes") || partName.equals("face") || partName.equals("facial_hair")) {
-                                originalWidth = originalHeight = 16;
-                            } else if (partName.equals("hair_back") || partName.equals("hair_mid")) {
-                                originalWidth = originalHeight = 40;
-                            } else {
-                                originalWidth = originalHeight = 32;
-                            }
-
-                            int scaledWidth = (int) (originalWidth * scale);
-                            int scaledHeight = (int) (originalHeight * scale);
-
-                            // Charger l'image avec la taille voulue et sans lissage
-                            Image image = new Image(imagePath, scaledWidth, scaledHeight, false, false);
-
-                            Image finalImage = lutManager.applyLUT(partName, image);
-
-                            view.setImage(finalImage);
-
-                            // Apply offset
-                            view.setTranslateX(offset[0]);
-                            view.setTranslateY(offset[1]);
-
-                            // Original depth is still used for animations that
-                            // don't follow the standard render order
-                            if (frame.depth > 0) {
-                                //view.setViewOrder(-frame.depth);
-                            }
-                            // Notify the listener about the frame update
-                            if (frameUpdateListener != null) {
-                                frameUpdateListener.onFrameUpdate(partName, frameIndex);
-                            }
-                        } else {
-                            // Si l'image n'est pas trouvée, effacer l'image précédente
-                            view.setImage(null);
-                        }
-                    }
-            );
+    /**
+     * Affiche un sprite dans la vue d'une partie : tout de suite s'il est prêt, sinon dès que
+     * son décodage en arrière-plan est terminé (la vue garde l'image précédente en attendant)
+     */
+    private void showSprite(BodyPart part, String imagePath, double translateX, double translateY) {
+        ImageView view = bodyParts.get(part);
+        cancelPendingSprite(part);
 
-            timeline.getKeyFrames().add(keyFrame);
-            totalDuration += adjustedDuration;
+        Image ready = decodeScheduler.getIfReady(part, imagePath);
+        if (ready != null) {
+            setSprite(view, ready, translateX, translateY);
+            return;
         }
 
-        // Add a final keyframe to loop the animation
-        KeyFrame loopFrame = new KeyFrame(Duration.seconds(totalDuration));
-        timeline.getKeyFrames().add(loopFrame);
+        CompletableFuture<Image> decode = decodeScheduler.decode(part, imagePath, DecodeScheduler.Priority.VISIBLE_NOW);
+        pendingSprites.put(part, decode);
+        decode.thenAccept(image -> Platform.runLater(() -> {
+            // Une autre frame a pu être demandée entre-temps
+            if (pendingSprites.remove(part, decode)) {
+                setSprite(view, image, translateX, translateY);
+            }
+        }));
+    }
+
+    private static void setSprite(ImageView view, Image image, double translateX, double translateY) {
+        view.setImage(image);
+        view.setTranslateX(translateX);
+        view.setTranslateY(translateY);
+    }
 
-        timeline.setCycleCount(Timeline.INDEFINITE);
-        timeline.play();
+    private void cancelPendingSprite(BodyPart part) {
+        CompletableFuture<Image> pending = pendingSprites.remove(part);
+        if (pending != null) {
+            pending.cancel(false);
+        }
+    }
 
-        // Store the timeline for later stopping
-        timelines.put(partName, timeline);
+    private void cancelPendingSprites() {
+        for (CompletableFuture<Image> pending : pendingSprites.values()) {
+            pending.cancel(false);
+        }
+        pendingSprites.clear();
     }
 
     /**
      * Stop all running animations
      */
     private void stopAllAnimations() {
-        for (Timeline timeline : timelines.values()) {
-            if (timeline != null) {
-                timeline.stop();
-            }
-        }
-        timelines.clear();
+        clock.stop();
+        cancelWarmup();
+        prefetcher.cancel();
+        deactivateComposite();
+        schedules.clear();
 
         // Réinitialiser toutes les images
+        cancelPendingSprites();
         for (ImageView view : bodyParts.values()) {
             view.setImage(null);
         }
@@ -408,45 +885,24 @@ public class RenderAnimation {
     public void setScale(double scale) {
         this.scale = scale;
 
-        for (String partName : bodyParts.keySet()) {
-            ImageView view = bodyParts.get(partName);
-
-            // Déterminer la taille originale selon le type de partie
-            int originalWidth, originalHeight;
-            if (partName.equals("base_head") || partName.equals("eyes") || partName.equals("face") || partName.equals("facial_hair")) {
-                originalWidth = originalHeight = 16;
-            } else if (partName.equals("hair_back") || partName.equals("hair_mid")) {
-                originalWidth = originalHeight = 40;
-            } else {
-                originalWidth = originalHeight = 32;
-            }
-
-            // Calculer la nouvelle taille
-            int scaledWidth = (int) (originalWidth * scale);
-            int scaledHeight = (int) (originalHeight * scale);
-
-            // Effacer l'image actuelle pour forcer le rechargement
-            view.setImage(null);
-
-            // Réinitialiser les propriétés de l'ImageView AVANT de charger la nouvelle image
-            view.setFitWidth(Region.USE_COMPUTED_SIZE);
-            view.setFitHeight(Region.USE_COMPUTED_SIZE);
-            view.setPreserveRatio(false);
-            view.setSmooth(false);
-        }
-
-        // Redémarrer l'animation qui rechargera toutes les images à la bonne taille
-        if (currentAction != null && !currentAction.isEmpty()) {
-            setAnimation(currentAction, currentDirection);
-        }
+        // Les sprites restent à leur taille d'origine, seul le calque est agrandi
+        layerScale.setX(scale);
+        layerScale.setY(scale);
     }
 
     /**
      * Cleanup resources when no longer needed
      */
     public void dispose() {
+        if (folderWatcher != null) {
+            folderWatcher.close();
+            folderWatcher = null;
+        }
         stopAllAnimations();
-        spriteContainer.getChildren().removeAll(bodyParts.values());
+        compositeExecutor.shutdownNow();
+        prefetcher.shutdown();
+        decodeScheduler.shutdown();
+        spriteContainer.getChildren().remove(partLayer);
     }
 
     /**
@@ -456,8 +912,9 @@ public class RenderAnimation {
     public void updateCurrentFrameMap(Map<String, Integer> frameMap) {
         currentFrameMap.clear();
         for (Map.Entry<String, Integer> entry : frameMap.entrySet()) {
-            if (bodyParts.containsKey(entry.getKey())) {
-                currentFrameMap.put(entry.getKey(), entry.getValue());
+            BodyPart part = BodyPart.fromId(entry.getKey());
+            if (part != null) {
+                currentFrameMap.put(part, entry.getValue());
             }
         }
     }
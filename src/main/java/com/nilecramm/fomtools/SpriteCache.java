@@ -0,0 +1,230 @@
+package com.nilecramm.fomtools;
+
+import javafx.scene.image.Image;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache LRU des sprites décodés, indexé par (chemin du sprite, taille cible).
+ * Pour les parties recolorées par une LUT, seule la forme indexée du sprite est gardée
+ * (un octet par pixel, indexé par LUT) : l'image ARGB d'origine n'est pas conservée.
+ * La mémoire occupée par les deux formes est bornée par un même budget en octets.
+ */
+public class SpriteCache {
+    public static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    // lut est null pour une image décodée, la LUT de la forme indexée sinon
+    private record Key(String path, int width, int height, LUTTable lut) { }
+
+    // accessOrder = true : l'ordre d'itération va du moins récemment utilisé au plus récent
+    // Valeurs : Image (sprite décodé) ou IndexedSprite
+    private final LinkedHashMap<Key, Object> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long budgetBytes;
+    private long usedBytes = 0;
+
+    // Compteur incrémenté à chaque invalidation ; génération d'un chemin = dernière invalidation qui l'a touché
+    private long invalidations = 0;
+    private long clearedAt = 0;
+    private final Map<String, Long> invalidatedAt = new HashMap<>();
+
+    public SpriteCache() {
+        this(DEFAULT_BUDGET_BYTES);
+    }
+
+    public SpriteCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Retourne le sprite décodé à la taille demandée, en le chargeant si nécessaire
+     * @param path URL du sprite (format "file:...")
+     * @param width Largeur cible
+     * @param height Hauteur cible
+     * @return L'image décodée
+     */
+    public Image get(String path, int width, int height) {
+        Key key = new Key(path, width, height, null);
+        long generation;
+        synchronized (this) {
+            Image image = (Image) entries.get(key);
+            if (image != null) {
+                return image;
+            }
+            generation = generationOf(path);
+        }
+
+        // Charger l'image avec la taille voulue et sans lissage, hors du verrou
+        // pour que plusieurs threads puissent décoder en même temps
+        Image image = load(path, width, height);
+
+        // Ne pas garder les images en erreur, le fichier peut réapparaître plus tard
+        if (image.isError()) {
+            return image;
+        }
+        return (Image) store(key, image, generation);
+    }
+
+    /**
+     * Retourne la forme indexée du sprite pour une LUT, en le décodant et l'indexant si nécessaire.
+     * L'image décodée ne sert qu'à l'indexation, elle n'est pas gardée.
+     * @return Le sprite indexé, ou null si la LUT a trop de couleurs template ou si le sprite est illisible
+     */
+    public IndexedSprite getIndexed(String path, int width, int height, LUTTable lut) {
+        Key key = new Key(path, width, height, lut);
+        long generation;
+        synchronized (this) {
+            IndexedSprite indexed = (IndexedSprite) entries.get(key);
+            if (indexed != null) {
+                return indexed;
+            }
+            generation = generationOf(path);
+        }
+
+        Image image = load(path, width, height);
+        if (image.isError()) {
+            return null;
+        }
+        IndexedSprite indexed = IndexedSprite.encode(image, lut);
+        return indexed != null ? (IndexedSprite) store(key, indexed, generation) : null;
+    }
+
+    private static Image load(String path, int width, int height) {
+        return new Image(path, width, height, false, false);
+    }
+
+    /**
+     * Mémorise une entrée calculée hors du verrou
+     * @return L'entrée à utiliser (celle déjà présente si un autre thread l'a calculée entre-temps)
+     */
+    private synchronized Object store(Key key, Object value, long generation) {
+        // Fichier invalidé pendant le décodage : le résultat est peut-être celui d'avant la modification
+        if (generationOf(key.path()) != generation) {
+            return value;
+        }
+
+        // Un autre thread a pu décoder le même sprite entre-temps : garder le premier
+        Object existing = entries.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        entries.put(key, value);
+        usedBytes += sizeOf(value);
+        evict();
+        return value;
+    }
+
+    /**
+     * Retourne le sprite s'il est déjà décodé, sans jamais le charger
+     * @return L'image, ou null si elle n'est pas en cache
+     */
+    public synchronized Image peek(String path, int width, int height) {
+        return (Image) entries.get(new Key(path, width, height, null));
+    }
+
+    /**
+     * Retourne la forme indexée du sprite pour une LUT si elle est déjà calculée
+     * @return Le sprite indexé, ou null
+     */
+    public synchronized IndexedSprite peekIndexed(String path, int width, int height, LUTTable lut) {
+        return (IndexedSprite) entries.get(new Key(path, width, height, lut));
+    }
+
+    /**
+     * Indique si un sprite est déjà décodé, sans le compter comme utilisé pour l'éviction
+     */
+    public synchronized boolean contains(String path, int width, int height) {
+        return entries.containsKey(new Key(path, width, height, null));
+    }
+
+    /**
+     * Indique si la forme indexée d'un sprite est déjà calculée, sans la compter comme utilisée
+     */
+    public synchronized boolean containsIndexed(String path, int width, int height, LUTTable lut) {
+        return entries.containsKey(new Key(path, width, height, lut));
+    }
+
+    /**
+     * @return true si une entrée de cette taille tient dans le budget sans rien évincer
+     */
+    public synchronized boolean hasRoomFor(long bytes) {
+        return usedBytes + bytes <= budgetBytes;
+    }
+
+    /**
+     * Taille en cache d'un sprite décodé
+     */
+    public static long imageBytes(int width, int height) {
+        return 4L * width * height;
+    }
+
+    /**
+     * Génération d'un sprite, qui change à chaque invalidation de son chemin (ou vidage du cache)
+     */
+    public synchronized long generationOf(String path) {
+        return Math.max(clearedAt, invalidatedAt.getOrDefault(path, 0L));
+    }
+
+    /**
+     * Retire toutes les tailles et formes indexées d'un sprite du cache (ex: fichier modifié sur le disque)
+     */
+    public synchronized void invalidate(String path) {
+        invalidatedAt.put(path, ++invalidations);
+        Iterator<Map.Entry<Key, Object>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Object> entry = it.next();
+            if (entry.getKey().path().equals(path)) {
+                usedBytes -= sizeOf(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Vide entièrement le cache
+     */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+        // Tous les chemins changent de génération, les invalidations individuelles ne servent plus
+        clearedAt = ++invalidations;
+        invalidatedAt.clear();
+    }
+
+    /**
+     * Change le budget mémoire et évince si nécessaire
+     */
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evict();
+    }
+
+    public synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Évince les entrées les moins récemment utilisées jusqu'à respecter le budget
+     */
+    private void evict() {
+        Iterator<Object> it = entries.values().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            usedBytes -= sizeOf(it.next());
+            it.remove();
+        }
+    }
+
+    private static long sizeOf(Object value) {
+        if (value instanceof IndexedSprite indexed) {
+            return indexed.byteSize();
+        }
+        Image image = (Image) value;
+        return (long) image.getWidth() * (long) image.getHeight() * 4L;
+    }
+}
@@ -0,0 +1,177 @@
+package com.nilecramm.fomtools;
+
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Parcours parallèle d'un dossier de personnage : chaque sous-dossier est lu par une tâche
+ * fork-join, avec les attributs déjà fournis par le listing (pas de stat supplémentaire).
+ *
+ * Le résultat est identique au parcours séquentiel en profondeur : quand deux fichiers donnent
+ * la même partie et la même frame, celui qui viendrait en dernier dans ce parcours l'emporte.
+ */
+public class SpriteDirectoryScanner {
+
+    /**
+     * Un dossier parcouru : chemin relatif au dossier du personnage, date de modification
+     * relevée avant son listing et nombre d'entrées
+     */
+    public record DirectoryStamp(String relativePath, long lastModified, int entryCount) { }
+
+    /**
+     * Résultat du parcours
+     * @param sprites Pour chaque partie (indice : ordinal), le chemin (format "file:...") de chaque frame trouvée
+     * @param directories Tous les dossiers parcourus, pour valider un index enregistré
+     */
+    public record ScanResult(FrameTable[] sprites, List<DirectoryStamp> directories) { }
+
+    /**
+     * Un sprite trouvé et sa position dans le parcours séquentiel (indices depuis la racine)
+     */
+    private record Candidate(String path, int[] order) {
+        boolean isAfter(Candidate other) {
+            int length = Math.min(order.length, other.order.length);
+            for (int i = 0; i < length; i++) {
+                if (order[i] != other.order[i]) {
+                    return order[i] > other.order[i];
+                }
+            }
+            return order.length > other.order.length;
+        }
+    }
+
+    private final Map<BodyPart, ConcurrentHashMap<Integer, Candidate>> found = new EnumMap<>(BodyPart.class);
+    private final ConcurrentLinkedQueue<DirectoryStamp> directories = new ConcurrentLinkedQueue<>();
+    private final Path root;
+
+    private SpriteDirectoryScanner(Path root) {
+        this.root = root;
+        for (BodyPart part : BodyPart.all()) {
+            found.put(part, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Parcourt un dossier de personnage et ses sous-dossiers
+     * @param root Dossier du personnage
+     * @return Les sprites trouvés et les dossiers parcourus
+     */
+    public static ScanResult scan(Path root) {
+        SpriteDirectoryScanner scanner = new SpriteDirectoryScanner(root);
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(root, BasicFileAttributes.class);
+            if (attrs.isDirectory()) {
+                ForkJoinPool.commonPool().invoke(
+                        scanner.new DirectoryTask(root, attrs.lastModifiedTime().toMillis(), new int[0]));
+            }
+        } catch (IOException e) {
+            // Dossier absent : aucun sprite, comme avec File.isDirectory()
+        }
+
+        FrameTable[] result = SpriteLoader.emptyTables();
+        for (Map.Entry<BodyPart, ConcurrentHashMap<Integer, Candidate>> entry : scanner.found.entrySet()) {
+            FrameTable frames = result[entry.getKey().ordinal()];
+            for (Map.Entry<Integer, Candidate> frame : entry.getValue().entrySet()) {
+                frames.put(frame.getKey(), frame.getValue().path());
+            }
+        }
+        return new ScanResult(result, new ArrayList<>(scanner.directories));
+    }
+
+    /**
+     * Liste un seul dossier ; ses sous-dossiers deviennent de nouvelles tâches
+     */
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+        private final long lastModified;
+        private final int[] order;
+
+        DirectoryTask(Path directory, long lastModified, int[] order) {
+            this.directory = directory;
+            this.lastModified = lastModified;
+            this.order = order;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subtasks = new ArrayList<>();
+            int[] entryCount = new int[1];
+
+            try {
+                // Profondeur 1 : les entrées du dossier arrivent toutes dans visitFile, avec leurs attributs
+                Files.walkFileTree(directory, EnumSet.of(FileVisitOption.FOLLOW_LINKS), 1, new SimpleFileVisitor<>() {
+                    private int index = 0;
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        int[] childOrder = childOrder(index++);
+                        entryCount[0] = index;
+                        if (attrs.isDirectory()) {
+                            subtasks.add(new DirectoryTask(file, attrs.lastModifiedTime().toMillis(), childOrder));
+                        } else {
+                            categorize(file, childOrder);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        // Entrée illisible : ignorée, comme avec listFiles()
+                        index++;
+                        entryCount[0] = index;
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                System.err.println("Impossible de parcourir " + directory + ": " + e.getMessage());
+            }
+
+            directories.add(new DirectoryStamp(root.relativize(directory).toString(), lastModified, entryCount[0]));
+            invokeAll(subtasks);
+        }
+
+        private int[] childOrder(int index) {
+            int[] childOrder = new int[order.length + 1];
+            System.arraycopy(order, 0, childOrder, 0, order.length);
+            childOrder[order.length] = index;
+            return childOrder;
+        }
+    }
+
+    private void categorize(Path file, int[] order) {
+        String fileName = file.getFileName().toString();
+        if (!SpriteLoader.isImageFile(fileName)) {
+            return;
+        }
+
+        BodyPart part = SpriteLoader.matchPart(fileName);
+        if (part == null) {
+            return;
+        }
+
+        int frameNumber = SpriteLoader.extractFrameNumber(fileName);
+        if (frameNumber < 0) {
+            return;
+        }
+
+        Candidate candidate = new Candidate(SpriteLoader.toUrl(file), order);
+        found.get(part).merge(frameNumber, candidate,
+                (current, added) -> added.isAfter(current) ? added : current);
+    }
+}
@@ -0,0 +1,206 @@
+package com.nilecramm.fomtools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Index des sprites d'un personnage enregistré sur le disque (dossier sprite_index/),
+ * pour rouvrir un personnage avec une seule lecture de fichier au lieu d'un parcours complet.
+ *
+ * L'index reste valide tant que la date de modification de chacun des dossiers parcourus
+ * n'a pas changé (ajout, suppression ou renommage d'une entrée). Pour les dossiers modifiés
+ * juste avant l'écriture de l'index, la date peut manquer un changement (précision du système
+ * de fichiers) : leur nombre d'entrées est alors recompté.
+ *
+ * Format (big-endian) :
+ * en-tête   : magic, version, chemin absolu du personnage, date du parcours
+ * dossiers  : nombre, puis (chemin relatif, date de modification, nombre d'entrées) par dossier
+ * sprites   : préfixe commun des chemins, puis pour chaque partie son nom, son nombre de frames
+ *             et (frame, chemin sans le préfixe) par frame
+ */
+public class SpriteIndexCache {
+    private static final int MAGIC = 0x464F4D53; // "FOMS"
+    private static final int VERSION = 2; // 2 : parties reconnues par le plus long nom
+
+    // Marge couvrant la précision des dates de modification (2 s en FAT)
+    private static final long MTIME_GRANULARITY_MS = 2000;
+
+    private static final File INDEX_DIRECTORY = new File("sprite_index");
+
+    private SpriteIndexCache() {
+    }
+
+    /**
+     * Charge l'index enregistré d'un personnage s'il est encore valide
+     * @param root Dossier du personnage
+     * @return Les sprites de chaque partie (indice : ordinal), ou null s'il faut reparcourir le dossier
+     */
+    public static FrameTable[] load(Path root) {
+        Path absoluteRoot = root.toAbsolutePath();
+        File indexFile = indexFileFor(absoluteRoot);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()));
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            if (!readString(buffer).equals(absoluteRoot.toString())) {
+                return null; // Autre personnage avec le même nom de fichier d'index
+            }
+            long writtenAt = buffer.getLong();
+
+            int directoryCount = buffer.getInt();
+            for (int i = 0; i < directoryCount; i++) {
+                Path directory = absoluteRoot.resolve(readString(buffer));
+                long lastModified = buffer.getLong();
+                int entryCount = buffer.getInt();
+                if (!isUnchanged(directory, lastModified, entryCount, writtenAt)) {
+                    return null;
+                }
+            }
+
+            String prefix = readString(buffer);
+            FrameTable[] sprites = SpriteLoader.emptyTables();
+
+            int partCount = buffer.getInt();
+            for (int p = 0; p < partCount; p++) {
+                BodyPart part = BodyPart.fromId(readString(buffer));
+                if (part == null) {
+                    return null; // Index écrit avec une autre liste de parties
+                }
+                int frameCount = buffer.getInt();
+                FrameTable frames = sprites[part.ordinal()];
+                for (int f = 0; f < frameCount; f++) {
+                    int frame = buffer.getInt();
+                    frames.put(frame, prefix + readString(buffer));
+                }
+            }
+            return sprites;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Index de sprites illisible, le dossier sera reparcouru : " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Enregistre l'index d'un personnage, remplacé de façon atomique
+     */
+    public static void save(Path root, SpriteDirectoryScanner.ScanResult scan, long scannedAt) throws IOException {
+        Path absoluteRoot = root.toAbsolutePath();
+        File indexFile = indexFileFor(absoluteRoot);
+        Files.createDirectories(INDEX_DIRECTORY.toPath());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, absoluteRoot.toString());
+        out.writeLong(scannedAt);
+
+        List<SpriteDirectoryScanner.DirectoryStamp> directories = scan.directories();
+        out.writeInt(directories.size());
+        for (SpriteDirectoryScanner.DirectoryStamp directory : directories) {
+            writeString(out, directory.relativePath());
+            out.writeLong(directory.lastModified());
+            out.writeInt(directory.entryCount());
+        }
+
+        // Tous les chemins commencent normalement par le dossier du personnage
+        String prefix = commonPrefix(scan.sprites());
+        writeString(out, prefix);
+
+        BodyPart[] parts = BodyPart.all();
+        out.writeInt(parts.length);
+        for (BodyPart part : parts) {
+            FrameTable frames = scan.sprites()[part.ordinal()];
+            int[] numbers = frames.frames();
+            writeString(out, part.getId());
+            out.writeInt(numbers.length);
+            for (int frame : numbers) {
+                out.writeInt(frame);
+                writeString(out, frames.get(frame).substring(prefix.length()));
+            }
+        }
+        out.flush();
+
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        Files.write(tempFile.toPath(), bytes.toByteArray());
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static boolean isUnchanged(Path directory, long lastModified, int entryCount, long writtenAt) throws IOException {
+        File file = directory.toFile();
+        if (!file.isDirectory() || file.lastModified() != lastModified) {
+            return false;
+        }
+
+        // Modifié trop près de l'écriture de l'index : la date seule ne suffit pas
+        if (lastModified + MTIME_GRANULARITY_MS >= writtenAt) {
+            int count = 0;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path ignored : entries) {
+                    count++;
+                }
+            }
+            return count == entryCount;
+        }
+        return true;
+    }
+
+    private static String commonPrefix(FrameTable[] sprites) {
+        String prefix = null;
+        for (FrameTable frames : sprites) {
+            for (int frame : frames.frames()) {
+                String path = frames.get(frame);
+                if (prefix == null) {
+                    prefix = path;
+                } else {
+                    int length = 0;
+                    int max = Math.min(prefix.length(), path.length());
+                    while (length < max && prefix.charAt(length) == path.charAt(length)) {
+                        length++;
+                    }
+                    // Ne pas couper une paire de substitution en deux
+                    if (length > 0 && Character.isHighSurrogate(prefix.charAt(length - 1))) {
+                        length--;
+                    }
+                    prefix = prefix.substring(0, length);
+                }
+            }
+        }
+        return prefix != null ? prefix : "";
+    }
+
+    /**
+     * Fichier d'index d'un personnage : nom du dossier suivi d'un hash du chemin complet
+     */
+    private static File indexFileFor(Path absoluteRoot) {
+        Path name = absoluteRoot.getFileName();
+        String folder = name != null ? name.toString().replaceAll("[^A-Za-z0-9._-]", "_") : "root";
+        return new File(INDEX_DIRECTORY, folder + "-" + Integer.toHexString(absoluteRoot.toString().hashCode()) + ".idx");
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
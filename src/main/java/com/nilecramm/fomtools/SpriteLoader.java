@@ -1,6 +1,8 @@
 package com.nilecramm.fomtools;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -9,15 +11,13 @@ import java.util.stream.Collectors;
  */
 public class SpriteLoader {
     // Map de tous les sprites trouvés, organisés par partie du corps et frame
-    private final Map<String, Map<Integer, String>> spritePaths = new HashMap<>();
-
-    // Les clés de recherche pour chaque partie du corps - maintenant avec tous les éléments
-    private static final List<String> BODY_PARTS = List.of(
-            "base_arm_left", "base_arm_right", "base_chest", "base_head", "base_legs",
-            "sleeve_left", "tool", "tool_effect", "sleeve_right", "head_gear",
-            "face_gear", "hair_front", "eyes", "hair_mid", "face", "facial_hair",
-            "waist", "feet", "legs", "torso", "back_gear", "hair_back",
-            "head_gear_back", "base_effect"
+    // (indice : ordinal de la partie)
+    private FrameTable[] spritePaths = emptyTables();
+
+    // Parties indispensables pour afficher un personnage
+    private static final Set<BodyPart> ESSENTIAL_PARTS = EnumSet.of(
+            BodyPart.BASE_ARM_LEFT, BodyPart.BASE_ARM_RIGHT, BodyPart.BASE_CHEST,
+            BodyPart.BASE_HEAD, BodyPart.BASE_LEGS
     );
 
     /**
@@ -25,41 +25,85 @@ public class SpriteLoader {
      * @param characterPath Chemin vers le dossier du personnage
      */
     public void loadCharacterSprites(String characterPath) {
-        // Vider les chemins existants
-        spritePaths.clear();
+        Path root = new File(characterPath).toPath();
 
-        // Initialiser les maps pour chaque partie du corps
-        for (String part : BODY_PARTS) {
-            spritePaths.put(part, new HashMap<>());
+        // Index enregistré encore valide : une seule lecture de fichier
+        FrameTable[] sprites = SpriteIndexCache.load(root);
+        if (sprites == null) {
+            // Sinon parcourir tout le dossier en parallèle et enregistrer l'index pour la prochaine fois
+            long scannedAt = System.currentTimeMillis();
+            SpriteDirectoryScanner.ScanResult scan = SpriteDirectoryScanner.scan(root);
+            sprites = scan.sprites();
+            try {
+                SpriteIndexCache.save(root, scan, scannedAt);
+            } catch (IOException e) {
+                System.err.println("Impossible d'écrire l'index de sprites: " + e.getMessage());
+            }
         }
 
-        // Charger récursivement tous les fichiers du dossier
-        File characterDir = new File(characterPath);
-        scanDirectory(characterDir);
+        spritePaths = sprites;
     }
 
     /**
-     * Parcourt récursivement un dossier pour trouver tous les fichiers d'image
-     * @param directory Le dossier à parcourir
+     * Met à jour le sprite d'un fichier créé ou modifié, sans reparcourir le dossier
+     * @param file Le fichier image
+     * @return La partie du fichier, ou null si ce n'est pas un sprite reconnu
      */
-    private void scanDirectory(File directory) {
-        if (!directory.isDirectory()) {
-            return;
+    public BodyPart putSprite(Path file) {
+        String fileName = file.getFileName().toString();
+        if (!isImageFile(fileName)) {
+            return null;
         }
 
-        // Parcourir tous les fichiers du dossier
-        File[] files = directory.listFiles();
-        if (files == null) return;
-
-        for (File file : files) {
-            if (file.isDirectory()) {
-                // Si c'est un dossier, explorer récursivement
-                scanDirectory(file);
-            } else if (isImageFile(file.getName())) {
-                // Si c'est une image, essayer de la catégoriser
-                categorizeImage(file);
+        BodyPart part = matchPart(fileName);
+        int frameNumber = extractFrameNumber(fileName);
+        if (part == null || frameNumber < 0) {
+            return null;
+        }
+
+        spritePaths[part.ordinal()].put(frameNumber, toUrl(file));
+        return part;
+    }
+
+    /**
+     * Retire les sprites d'un fichier supprimé, ou de tous les fichiers d'un dossier supprimé
+     * @param path Le fichier ou le dossier
+     * @return Le chemin (format "file:...") et la partie de chaque sprite retiré
+     */
+    public Map<String, BodyPart> removeSprites(Path path) {
+        String url = toUrl(path);
+        String directoryPrefix = url + "/";
+        Map<String, BodyPart> removed = new HashMap<>();
+
+        for (BodyPart part : BodyPart.all()) {
+            FrameTable frames = spritePaths[part.ordinal()];
+            for (int frame : frames.frames()) {
+                String spritePath = frames.get(frame);
+                if (spritePath.equals(url) || spritePath.startsWith(directoryPrefix)) {
+                    frames.remove(frame);
+                    removed.put(spritePath, part);
+                }
             }
         }
+        return removed;
+    }
+
+    /**
+     * Chemin d'un sprite au format utilisé par les images JavaFX ("file:" + chemin absolu)
+     */
+    static String toUrl(Path file) {
+        return "file:" + file.toAbsolutePath().toString().replace("\\", "/");
+    }
+
+    /**
+     * Une table de frames vide pour chaque partie du corps
+     */
+    static FrameTable[] emptyTables() {
+        FrameTable[] tables = new FrameTable[BodyPart.all().length];
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = new FrameTable();
+        }
+        return tables;
     }
 
     /**
@@ -67,68 +111,56 @@ public class SpriteLoader {
      * @param fileName Nom du fichier
      * @return true si c'est une image
      */
-    private boolean isImageFile(String fileName) {
+    static boolean isImageFile(String fileName) {
         String lowerCase = fileName.toLowerCase();
         return lowerCase.endsWith(".png") || lowerCase.endsWith(".jpg") ||
                 lowerCase.endsWith(".jpeg") || lowerCase.endsWith(".gif");
     }
 
     /**
-     * Catégorise une image selon sa partie du corps et son frame
-     * @param file Le fichier image
+     * Trouve la partie du corps d'une image d'après son nom
+     * @param fileName Nom du fichier
+     * @return La partie la plus longue contenue dans le nom, ou null
      */
-    private void categorizeImage(File file) {
-        String fileName = file.getName();
-
-        // Pour chaque partie du corps, vérifier si le nom contient la clé
-        for (String bodyPart : BODY_PARTS) {
-            if (fileName.contains(bodyPart)) {
-                // Essayer de trouver un numéro de frame dans le nom
-                Optional<Integer> frameNumber = extractFrameNumber(fileName);
-
-                if (frameNumber.isPresent()) {
-                    // Ajouter le chemin à la map
-                    spritePaths.get(bodyPart).put(
-                            frameNumber.get(),
-                            "file:" + file.getAbsolutePath().replace("\\", "/")
-                    );
-                }
-
-                // On suppose qu'une image correspond à une seule partie du corps
-                break;
-            }
-        }
+    static BodyPart matchPart(String fileName) {
+        // On suppose qu'une image correspond à une seule partie du corps
+        return BodyPartMatcher.match(fileName);
     }
 
     /**
-     * Extrait le numéro de frame d'un nom de fichier
+     * Extrait le numéro de frame d'un nom de fichier : le dernier nombre avant l'extension,
+     * lu directement dans la chaîne sans allocation
      * @param fileName Nom du fichier
-     * @return Numéro de frame optionnel
+     * @return Numéro de frame, ou -1 s'il n'y en a pas (ou s'il dépasse un int)
      */
-    private Optional<Integer> extractFrameNumber(String fileName) {
-        // Supprime l'extension
-        String nameWithoutExt = fileName.substring(0, fileName.lastIndexOf('.'));
-
-        // Cherche tous les nombres dans le nom
-        List<Integer> numbers = new ArrayList<>();
-        StringBuilder currentNumber = new StringBuilder();
-
-        for (char c : nameWithoutExt.toCharArray()) {
-            if (Character.isDigit(c)) {
-                currentNumber.append(c);
-            } else if (currentNumber.length() > 0) {
-                numbers.add(Integer.parseInt(currentNumber.toString()));
-                currentNumber = new StringBuilder();
-            }
+    static int extractFrameNumber(String fileName) {
+        // Ignorer l'extension
+        int end = fileName.lastIndexOf('.');
+        if (end < 0) {
+            end = fileName.length();
         }
 
-        // Ajouter le dernier nombre s'il existe
-        if (currentNumber.length() > 0) {
-            numbers.add(Integer.parseInt(currentNumber.toString()));
+        // Remonter jusqu'au dernier chiffre, puis jusqu'au début de ce nombre
+        int last = end - 1;
+        while (last >= 0 && Character.digit(fileName.charAt(last), 10) < 0) {
+            last--;
+        }
+        if (last < 0) {
+            return -1;
+        }
+        int first = last;
+        while (first > 0 && Character.digit(fileName.charAt(first - 1), 10) >= 0) {
+            first--;
         }
 
-        // Retourner le dernier nombre trouvé (généralement le frame)
-        return numbers.isEmpty() ? Optional.empty() : Optional.of(numbers.get(numbers.size() - 1));
+        long value = 0;
+        for (int i = first; i <= last; i++) {
+            value = value * 10 + Character.digit(fileName.charAt(i), 10);
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) value;
     }
 
     /**
@@ -137,9 +169,13 @@ public class SpriteLoader {
      * @param frameIndex Indice de frame
      * @return Chemin de l'image ou null si non trouvée
      */
+    public String getSpritePath(BodyPart bodyPart, int frameIndex) {
+        return spritePaths[bodyPart.ordinal()].get(frameIndex);
+    }
+
     public String getSpritePath(String bodyPart, int frameIndex) {
-        Map<Integer, String> frames = spritePaths.get(bodyPart);
-        return frames != null ? frames.get(frameIndex) : null;
+        BodyPart part = BodyPart.fromId(bodyPart);
+        return part != null ? getSpritePath(part, frameIndex) : null;
     }
 
     /**
@@ -169,10 +205,8 @@ public class SpriteLoader {
      */
     public boolean hasBasicSprites() {
         // Vérifier uniquement les parties essentielles du corps
-        List<String> essentialParts = List.of("base_arm_left", "base_arm_right", "base_chest", "base_head", "base_legs");
-
-        for (String part : essentialParts) {
-            if (spritePaths.get(part).isEmpty()) {
+        for (BodyPart part : ESSENTIAL_PARTS) {
+            if (!hasSpritesForPart(part)) {
                 return false;
             }
         }
@@ -184,19 +218,23 @@ public class SpriteLoader {
      * @param partName Nom de la partie
      * @return true si la partie a au moins un sprite
      */
+    public boolean hasSpritesForPart(BodyPart part) {
+        return !spritePaths[part.ordinal()].isEmpty();
+    }
+
     public boolean hasSpritesForPart(String partName) {
-        Map<Integer, String> frames = spritePaths.get(partName);
-        return frames != null && !frames.isEmpty();
+        BodyPart part = BodyPart.fromId(partName);
+        return part != null && hasSpritesForPart(part);
     }
 
     /**
      * Obtient tous les frames disponibles pour une partie du corps
      * @param bodyPart Partie du corps
-     * @return Set des indices de frame disponibles
+     * @return Indices de frame disponibles, dans l'ordre croissant
      */
-    public Set<Integer> getAvailableFrames(String bodyPart) {
-        Map<Integer, String> frames = spritePaths.get(bodyPart);
-        return frames != null ? frames.keySet() : Collections.emptySet();
+    public int[] getAvailableFrames(String bodyPart) {
+        BodyPart part = BodyPart.fromId(bodyPart);
+        return part != null ? spritePaths[part.ordinal()].frames() : new int[0];
     }
 
     /**
@@ -204,8 +242,21 @@ public class SpriteLoader {
      * @return Liste des noms de parties qui ont au moins un sprite
      */
     public List<String> getAvailableBodyParts() {
-        return BODY_PARTS.stream()
-                .filter(this::hasSpritesForPart)
+        return getAvailableParts().stream()
+                .map(BodyPart::getId)
                 .collect(Collectors.toList());
     }
+
+    /**
+     * Parties du corps qui ont au moins un sprite pour ce personnage, dans l'ordre du registre
+     */
+    public List<BodyPart> getAvailableParts() {
+        List<BodyPart> parts = new ArrayList<>();
+        for (BodyPart part : BodyPart.all()) {
+            if (hasSpritesForPart(part)) {
+                parts.add(part);
+            }
+        }
+        return parts;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,130 @@
+package com.nilecramm.fomtools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Préchargement à basse priorité des sprites que l'utilisateur a des chances de demander ensuite :
+ * les autres directions de l'action en cours, puis les actions voisines dans la liste.
+ * Seule la place libre du cache est utilisée (rien n'est évincé), et tout changement
+ * d'animation abandonne le préchargement en cours.
+ */
+public class SpritePrefetcher {
+    private static final String[] DIRECTIONS = {"north", "south", "east"};
+    // Actions préchargées de chaque côté de l'action en cours
+    private static final int NEIGHBOUR_ACTIONS = 2;
+
+    private final SpriteCache spriteCache;
+    private final DecodeScheduler decodeScheduler;
+    // Ce thread ne fait que choisir les sprites, ils sont préparés un par un avec la priorité PREFETCH
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "sprite-prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    // Change à chaque demande : un préchargement dépassé s'arrête au sprite suivant
+    private final AtomicLong generation = new AtomicLong();
+
+    private record Target(int actionId, String direction) { }
+
+    public SpritePrefetcher(SpriteCache spriteCache, DecodeScheduler decodeScheduler) {
+        this.spriteCache = spriteCache;
+        this.decodeScheduler = decodeScheduler;
+    }
+
+    /**
+     * Remplace le préchargement en cours par celui de l'animation affichée
+     * @param jsonData Données d'animation
+     * @param spriteLoader Sprites du personnage
+     * @param actionId Action affichée
+     * @param direction Direction affichée
+     */
+    public void prefetch(JsonData jsonData, SpriteLoader spriteLoader, int actionId, String direction) {
+        long token = generation.incrementAndGet();
+        executor.submit(() -> {
+            try {
+                run(token, jsonData, spriteLoader, actionId, direction);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Abandonne le préchargement en cours
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    public void shutdown() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private void run(long token, JsonData jsonData, SpriteLoader spriteLoader, int actionId, String direction) {
+        for (Target target : targets(jsonData.getActionTable().size(), actionId, direction)) {
+            List<FrameWarmup.Job> jobs = new ArrayList<>();
+            for (BodyPart part : spriteLoader.getAvailableParts()) {
+                ActionWrapper action = jsonData.getAction(part, target.actionId());
+                FrameTrack track = action != null ? action.forDirection(target.direction()) : null;
+                if (track != null) {
+                    FrameWarmup.addJobs(jobs, part, track, spriteLoader);
+                }
+            }
+
+            for (FrameWarmup.Job job : jobs) {
+                if (generation.get() != token) {
+                    return; // L'animation a changé
+                }
+
+                if (decodeScheduler.isPrepared(job.part(), job.imagePath())) {
+                    continue;
+                }
+                if (!spriteCache.hasRoomFor(decodeScheduler.preparedBytes(job.part()))) {
+                    return; // Cache plein : précharger plus évincerait des sprites utiles
+                }
+
+                // Un seul sprite à la fois : la place restante est vérifiée avant chacun. Seule la forme
+                // mise en cache est calculée (palette non développée), tout ce qui est préchargé est compté
+                CompletableFuture<?> decode = decodeScheduler.prepare(job.part(), job.imagePath(),
+                        DecodeScheduler.Priority.PREFETCH);
+                try {
+                    decode.join();
+                } catch (CancellationException | CompletionException e) {
+                    // Sprite illisible, le rendu le signalera s'il est affiché
+                }
+            }
+        }
+    }
+
+    /**
+     * Ordre de préchargement : autres directions de l'action, puis actions voisines dans la même direction
+     */
+    private static List<Target> targets(int actionCount, int actionId, String direction) {
+        List<Target> targets = new ArrayList<>();
+        for (String other : DIRECTIONS) {
+            if (!other.equals(direction)) {
+                targets.add(new Target(actionId, other));
+            }
+        }
+
+        for (int distance = 1; distance <= NEIGHBOUR_ACTIONS; distance++) {
+            if (actionId + distance < actionCount) {
+                targets.add(new Target(actionId + distance, direction));
+            }
+            if (actionId - distance >= 0) {
+                targets.add(new Target(actionId - distance, direction));
+            }
+        }
+        return targets;
+    }
+}
@@ -0,0 +1,138 @@
+package com.nilecramm.fomtools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Chargement de démarrage hors du thread FX, pendant que la fenêtre est déjà affichée :
+ * 1. la base d'animations et les sprites du premier personnage sont lus en parallèle
+ * 2. seuls les sprites de la première frame de l'animation initiale sont décodés
+ */
+public class StartupLoader {
+    public static final String INITIAL_DIRECTION = "south";
+
+    private final ReadJson readJson;
+    private final String jsonPath;
+    private final String charactersBasePath;
+    private final SpriteCache spriteCache;
+
+    private JsonData jsonData;
+    private List<String> characters = new ArrayList<>();
+    private String characterPath;
+    private SpriteLoader spriteLoader;
+
+    /**
+     * @param readJson Lecteur de la base d'animations
+     * @param jsonPath Chemin de par_output.json
+     * @param charactersBasePath Dossier des personnages
+     * @param spriteCache Cache qui recevra les sprites décodés, à donner ensuite au rendu
+     */
+    public StartupLoader(ReadJson readJson, String jsonPath, String charactersBasePath, SpriteCache spriteCache) {
+        this.readJson = readJson;
+        this.jsonPath = jsonPath;
+        this.charactersBasePath = charactersBasePath;
+        this.spriteCache = spriteCache;
+    }
+
+    /**
+     * Lance le chargement en arrière-plan
+     * @return Se termine avec ce loader une fois la première frame décodée
+     */
+    public CompletableFuture<StartupLoader> load() {
+        CompletableFuture<JsonData> json = CompletableFuture.supplyAsync(() -> readJson.readJson(jsonPath));
+        // Un dossier de personnages illisible ne doit pas empêcher d'ouvrir la vue : spriteLoader reste null
+        CompletableFuture<Void> sprites = CompletableFuture.runAsync(this::scanFirstCharacter)
+                .exceptionally(e -> {
+                    System.err.println("Impossible de parcourir les sprites du premier personnage");
+                    e.printStackTrace();
+                    return null;
+                });
+
+        return json.thenCombine(sprites, (data, ignored) -> {
+            jsonData = data;
+            decodeFirstFrames();
+            return this;
+        });
+    }
+
+    /**
+     * Parcourt le dossier du premier personnage de la liste
+     */
+    private void scanFirstCharacter() {
+        characters = SpriteLoader.listCharacterFolders(charactersBasePath);
+        if (characters.isEmpty()) {
+            return;
+        }
+
+        String path = charactersBasePath + characters.get(0);
+        SpriteLoader loader = new SpriteLoader();
+        loader.loadCharacterSprites(path);
+        characterPath = path;
+        spriteLoader = loader;
+    }
+
+    /**
+     * Décode les sprites de la première frame de l'animation initiale, pour chaque partie
+     */
+    private void decodeFirstFrames() {
+        String action = getInitialAction();
+        if (spriteLoader == null || action == null) {
+            return;
+        }
+
+        int actionId = jsonData.getActionTable().idOf(action);
+        List<BodyPart> parts = spriteLoader.getAvailableParts();
+        parts.parallelStream().forEach(part -> {
+            ActionWrapper wrapper = jsonData.getAction(part, actionId);
+            FrameTrack track = wrapper != null ? RenderAnimation.framesFor(wrapper, INITIAL_DIRECTION) : null;
+            if (track == null || track.size() == 0) {
+                return;
+            }
+
+            String path = spriteLoader.getSpritePath(part, track.targetFrame(0));
+            if (path != null) {
+                spriteCache.get(path, part.getNativeSize(), part.getNativeSize());
+            }
+        });
+    }
+
+    /**
+     * @return Les données d'animation, ou null si par_output.json est absent ou illisible
+     */
+    public JsonData getJsonData() {
+        return jsonData;
+    }
+
+    /**
+     * Première action de la base, celle affichée au démarrage
+     */
+    public String getInitialAction() {
+        if (jsonData == null || jsonData.getActionTable().size() == 0) {
+            return null;
+        }
+        return jsonData.getActionTable().nameOf(0);
+    }
+
+    public List<String> getCharacters() {
+        return characters;
+    }
+
+    /**
+     * @return Dossier du premier personnage, ou null s'il n'y en a aucun
+     */
+    public String getCharacterPath() {
+        return characterPath;
+    }
+
+    /**
+     * @return Les sprites déjà parcourus du premier personnage
+     */
+    public SpriteLoader getSpriteLoader() {
+        return spriteLoader;
+    }
+
+    public SpriteCache getSpriteCache() {
+        return spriteCache;
+    }
+}
@@ -0,0 +1,143 @@
+package com.nilecramm.fomtools;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chargement paresseux de par_output.json : un seul passage en streaming relève la position
+ * de chaque objet partie/action sans décoder leur contenu. Une action n'est décodée
+ * (ActionWrapper et ses frames) que lorsqu'elle est demandée.
+ */
+public class StreamingJsonLoader {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Le fichier a été régénéré depuis le chargement : les positions relevées ne sont plus valables
+     */
+    public static class SourceChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public SourceChangedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Le fichier tel qu'il était au parcours (taille et date), avec un seul canal pour toutes ses actions
+     */
+    private static class Source {
+        private final File file;
+        private final long length;
+        private final long lastModified;
+        private FileChannel channel;
+
+        Source(File file) {
+            this.file = file;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        synchronized ByteBuffer read(long start, long end) throws IOException {
+            if (channel == null) {
+                // Java ouvre le fichier en partage complet, le jeu peut toujours le remplacer ou le réécrire
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+
+            ByteBuffer bytes = ByteBuffer.allocate((int) (end - start));
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes, start + bytes.position()) < 0) {
+                    break; // Fichier raccourci : signalé par la vérification ci-dessous
+                }
+            }
+
+            // Vérifié après la lecture : une réécriture pendant celle-ci est aussi détectée
+            if (file.length() != length || file.lastModified() != lastModified) {
+                channel.close();
+                channel = null;
+                throw new SourceChangedException(file.getName() + " a été modifié depuis son chargement");
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Parcourt le fichier et relève l'emplacement des actions de chaque partie, décodées à la demande
+     * @param source Le fichier JSON
+     * @return Les données, dont les actions sont décodées à la demande
+     */
+    public JsonData load(File source) throws IOException {
+        JsonData jsonData = new JsonData();
+        JsonFactory factory = objectMapper.getFactory();
+        // Relevé avant le parcours : une régénération pendant celui-ci sera vue au premier décodage
+        Source snapshot = new Source(source);
+
+        try (JsonParser parser = factory.createParser(source)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Format inattendu pour " + source.getName());
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                BodyPart part = BodyPart.fromId(parser.getCurrentName());
+                JsonToken token = parser.nextToken();
+
+                if (part == null || token != JsonToken.START_OBJECT) {
+                    // Champ inconnu ou partie nulle : ignoré comme avec Jackson
+                    parser.skipChildren();
+                    continue;
+                }
+
+                scanActions(parser, snapshot, jsonData, part);
+            }
+        }
+        return jsonData;
+    }
+
+    /**
+     * Relève la position [début, fin[ de chaque action d'une partie en sautant leur contenu
+     */
+    private void scanActions(JsonParser parser, Source source, JsonData jsonData, BodyPart part) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<long[]> bounds = new ArrayList<>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            names.add(parser.getCurrentName());
+            JsonToken token = parser.nextToken();
+
+            if (token == JsonToken.VALUE_NULL) {
+                bounds.add(null);
+                continue;
+            }
+
+            long start = parser.getTokenLocation().getByteOffset();
+            parser.skipChildren();
+            long end = parser.getCurrentLocation().getByteOffset();
+            bounds.add(new long[] {start, end});
+        }
+
+        // Emplacement d'une action : son rang dans la partie, qui donne sa plage d'octets
+        long[] locations = new long[bounds.size()];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = bounds.get(i) != null ? i : -1;
+        }
+        jsonData.setLazyActions(part, names, locations, slot -> decodeAction(source, bounds.get((int) slot)));
+    }
+
+    /**
+     * Relit uniquement les octets de l'action puis la décode
+     * @throws SourceChangedException Si le fichier a changé depuis le parcours
+     */
+    private ActionWrapper decodeAction(Source source, long[] range) throws IOException {
+        ByteBuffer bytes = source.read(range[0], range[1]);
+        return objectMapper.readValue(bytes.array(), ActionWrapper.class);
+    }
+}
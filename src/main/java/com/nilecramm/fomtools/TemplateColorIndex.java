@@ -0,0 +1,91 @@
+package com.nilecramm.fomtools;
+
+import java.util.Arrays;
+
+/**
+ * Table de hachage (adressage ouvert) couleur RGB -> numéro de couleur template d'une LUT.
+ * Chaque couleur voisine à la tolérance près est insérée à l'avance, donc
+ * une recherche correspond à une seule lecture de tableau dans le cas courant.
+ */
+public class TemplateColorIndex {
+    private static final int EMPTY = -1;
+
+    private final int[] keys;
+    private final int[] templates;
+    private final int mask;
+
+    private TemplateColorIndex(int capacity) {
+        keys = new int[capacity];
+        templates = new int[capacity];
+        mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * Construit l'index à partir des couleurs template dans l'ordre des lignes
+     * @param templateColors Couleurs RGB (sans alpha)
+     * @param tolerance Écart maximal accepté par composante
+     */
+    public static TemplateColorIndex build(int[] templateColors, int tolerance) {
+        int span = 2 * tolerance + 1;
+        int maxEntries = Math.max(1, templateColors.length * span * span * span);
+
+        // Facteur de remplissage <= 0.5 pour garder des sondages courts
+        int capacity = Integer.highestOneBit(maxEntries * 2 - 1) << 1;
+        TemplateColorIndex index = new TemplateColorIndex(capacity);
+
+        for (int i = 0; i < templateColors.length; i++) {
+            int r = (templateColors[i] >> 16) & 0xFF;
+            int g = (templateColors[i] >> 8) & 0xFF;
+            int b = templateColors[i] & 0xFF;
+
+            for (int dr = -tolerance; dr <= tolerance; dr++) {
+                for (int dg = -tolerance; dg <= tolerance; dg++) {
+                    for (int db = -tolerance; db <= tolerance; db++) {
+                        int nr = r + dr, ng = g + dg, nb = b + db;
+                        if (nr < 0 || nr > 255 || ng < 0 || ng > 255 || nb < 0 || nb > 255) {
+                            continue;
+                        }
+                        // La première ligne trouvée garde la priorité, comme le parcours linéaire
+                        index.putIfAbsent((nr << 16) | (ng << 8) | nb, i);
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Retourne le numéro de la couleur template d'une couleur RGB, ou -1 si aucune ne correspond
+     */
+    public int get(int rgb) {
+        int slot = hash(rgb) & mask;
+        while (true) {
+            int key = keys[slot];
+            if (key == rgb) {
+                return templates[slot];
+            }
+            if (key == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void putIfAbsent(int rgb, int template) {
+        int slot = hash(rgb) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == rgb) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = rgb;
+        templates[slot] = template;
+    }
+
+    private static int hash(int rgb) {
+        int h = rgb * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+}